@@ -0,0 +1,79 @@
+package android.content;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+
+import java.util.ArrayList;
+
+/**
+ * JVM stand-in
+ */
+public abstract class ContentProvider
+{
+	private Context _context;
+
+	/**
+	 * Stand-in of attachInfo(Context, ProviderInfo)
+	 */
+	public void attachInfo(Context context)
+	{
+		if (_context == null) {
+			_context = context;
+			onCreate();
+		}
+	}
+
+	public final Context getContext()
+	{
+		return _context;
+	}
+
+	public abstract boolean onCreate();
+
+	public abstract Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder);
+
+	public Cursor query(
+		Uri uri,
+		String[] projection,
+		String selection,
+		String[] selectionArgs,
+		String sortOrder,
+		CancellationSignal cancellationSignal
+	)
+	{
+		return query(uri, projection, selection, selectionArgs, sortOrder);
+	}
+
+	public abstract String getType(Uri uri);
+
+	public abstract Uri insert(Uri uri, ContentValues values);
+
+	public abstract int delete(Uri uri, String selection, String[] selectionArgs);
+
+	public abstract int update(Uri uri, ContentValues values, String selection, String[] selectionArgs);
+
+	public int bulkInsert(Uri uri, ContentValues[] values)
+	{
+		for (ContentValues value : values) {
+			insert(uri, value);
+		}
+
+		return values.length;
+	}
+
+	public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+		throws OperationApplicationException
+	{
+		final ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+		for (int i = 0; i < results.length; i++) {
+			results[i] = operations.get(i).apply(this, results, i);
+		}
+
+		return results;
+	}
+
+	public void shutdown()
+	{
+	}
+}
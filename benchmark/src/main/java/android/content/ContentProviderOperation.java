@@ -0,0 +1,163 @@
+package android.content;
+
+import android.net.Uri;
+
+/**
+ * JVM stand-in without back references
+ */
+public class ContentProviderOperation
+{
+	private static final int TYPE_INSERT = 1;
+	private static final int TYPE_UPDATE = 2;
+	private static final int TYPE_DELETE = 3;
+
+	private final int _type;
+	private final Uri _uri;
+	private final ContentValues _values;
+	private final String _selection;
+	private final String[] _selectionArgs;
+	private final boolean _yieldAllowed;
+
+	private ContentProviderOperation(Builder builder)
+	{
+		_type = builder._type;
+		_uri = builder._uri;
+		_values = builder._values;
+		_selection = builder._selection;
+		_selectionArgs = builder._selectionArgs;
+		_yieldAllowed = builder._yieldAllowed;
+	}
+
+	public static Builder newInsert(Uri uri)
+	{
+		return new Builder(TYPE_INSERT, uri);
+	}
+
+	public static Builder newUpdate(Uri uri)
+	{
+		return new Builder(TYPE_UPDATE, uri);
+	}
+
+	public static Builder newDelete(Uri uri)
+	{
+		return new Builder(TYPE_DELETE, uri);
+	}
+
+	public Uri getUri()
+	{
+		return _uri;
+	}
+
+	public boolean isYieldAllowed()
+	{
+		return _yieldAllowed;
+	}
+
+	public boolean isInsert()
+	{
+		return _type == TYPE_INSERT;
+	}
+
+	public boolean isUpdate()
+	{
+		return _type == TYPE_UPDATE;
+	}
+
+	public boolean isDelete()
+	{
+		return _type == TYPE_DELETE;
+	}
+
+	public boolean isWriteOperation()
+	{
+		return true;
+	}
+
+	public ContentProviderResult apply(ContentProvider provider, ContentProviderResult[] backRefs, int numBackRefs)
+		throws OperationApplicationException
+	{
+		switch (_type) {
+			case TYPE_INSERT: {
+				final Uri uri = provider.insert(_uri, _values);
+				if (uri == null) {
+					throw new OperationApplicationException("insert failed");
+				}
+				return new ContentProviderResult(uri);
+			}
+			case TYPE_UPDATE:
+				return new ContentProviderResult(provider.update(_uri, _values, _selection, _selectionArgs));
+			default:
+				return new ContentProviderResult(provider.delete(_uri, _selection, _selectionArgs));
+		}
+	}
+
+	public static class Builder
+	{
+		private final int _type;
+		private final Uri _uri;
+		private ContentValues _values;
+		private String _selection;
+		private String[] _selectionArgs;
+		private boolean _yieldAllowed;
+
+		private Builder(int type, Uri uri)
+		{
+			_type = type;
+			_uri = uri;
+		}
+
+		public Builder withValues(ContentValues values)
+		{
+			if (_values == null) {
+				_values = new ContentValues();
+			}
+			_values.putAll(values);
+			return this;
+		}
+
+		public Builder withValue(String key, Object value)
+		{
+			if (_values == null) {
+				_values = new ContentValues();
+			}
+			if (value == null) {
+				_values.putNull(key);
+			} else if (value instanceof String) {
+				_values.put(key, (String) value);
+			} else if (value instanceof Long) {
+				_values.put(key, (Long) value);
+			} else if (value instanceof Integer) {
+				_values.put(key, (Integer) value);
+			} else if (value instanceof Double) {
+				_values.put(key, (Double) value);
+			} else if (value instanceof Float) {
+				_values.put(key, (Float) value);
+			} else if (value instanceof Boolean) {
+				_values.put(key, (Boolean) value);
+			} else if (value instanceof byte[]) {
+				_values.put(key, (byte[]) value);
+			} else {
+				_values.put(key, value.toString());
+			}
+			return this;
+		}
+
+		public Builder withSelection(String selection, String[] selectionArgs)
+		{
+			_selection = selection;
+			_selectionArgs = selectionArgs;
+			return this;
+		}
+
+		public Builder withYieldAllowed(boolean yieldAllowed)
+		{
+			_yieldAllowed = yieldAllowed;
+			return this;
+		}
+
+		public ContentProviderOperation build()
+		{
+			return new ContentProviderOperation(this);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package android.content;
+
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM stand-in calling providers in process, registered with addProvider()
+ */
+public class ContentResolver
+{
+	private final Context _context;
+	private final ConcurrentHashMap<String, ContentProvider> _providers = new ConcurrentHashMap<>();
+	private final AtomicLong _notifyCount = new AtomicLong();
+
+	public ContentResolver(Context context)
+	{
+		_context = context;
+	}
+
+	/**
+	 * Stand-in only: attaches the provider to the context and serves the authority with it
+	 */
+	public void addProvider(String authority, ContentProvider provider)
+	{
+		provider.attachInfo(_context);
+		_providers.put(authority, provider);
+	}
+
+	/**
+	 * Stand-in only
+	 */
+	public long getNotifyCount()
+	{
+		return _notifyCount.get();
+	}
+
+	public final Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder)
+	{
+		return _getProvider(uri.getAuthority()).query(uri, projection, selection, selectionArgs, sortOrder);
+	}
+
+	public final Cursor query(
+		Uri uri,
+		String[] projection,
+		String selection,
+		String[] selectionArgs,
+		String sortOrder,
+		CancellationSignal cancellationSignal
+	)
+	{
+		return _getProvider(uri.getAuthority()).query(uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+	}
+
+	public final String getType(Uri uri)
+	{
+		return _getProvider(uri.getAuthority()).getType(uri);
+	}
+
+	public final Uri insert(Uri uri, ContentValues values)
+	{
+		return _getProvider(uri.getAuthority()).insert(uri, values);
+	}
+
+	public final int bulkInsert(Uri uri, ContentValues[] values)
+	{
+		return _getProvider(uri.getAuthority()).bulkInsert(uri, values);
+	}
+
+	public final int update(Uri uri, ContentValues values, String selection, String[] selectionArgs)
+	{
+		return _getProvider(uri.getAuthority()).update(uri, values, selection, selectionArgs);
+	}
+
+	public final int delete(Uri uri, String selection, String[] selectionArgs)
+	{
+		return _getProvider(uri.getAuthority()).delete(uri, selection, selectionArgs);
+	}
+
+	public ContentProviderResult[] applyBatch(String authority, ArrayList<ContentProviderOperation> operations)
+		throws RemoteException, OperationApplicationException
+	{
+		return _getProvider(authority).applyBatch(operations);
+	}
+
+	public void notifyChange(Uri uri, ContentObserver observer)
+	{
+		notifyChange(uri, observer, true);
+	}
+
+	public void notifyChange(Uri uri, ContentObserver observer, boolean syncToNetwork)
+	{
+		_notifyCount.incrementAndGet();
+	}
+
+	private ContentProvider _getProvider(String authority)
+	{
+		final ContentProvider provider = _providers.get(authority);
+		if (provider == null) {
+			throw new IllegalArgumentException("Unknown authority " + authority);
+		}
+
+		return provider;
+	}
+}
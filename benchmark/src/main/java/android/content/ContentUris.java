@@ -0,0 +1,21 @@
+package android.content;
+
+import android.net.Uri;
+
+/**
+ * JVM stand-in
+ */
+public class ContentUris
+{
+	public static long parseId(Uri contentUri)
+	{
+		final String last = contentUri.getLastPathSegment();
+
+		return (last == null ? -1 : Long.parseLong(last));
+	}
+
+	public static Uri withAppendedId(Uri contentUri, long id)
+	{
+		return contentUri.buildUpon().appendEncodedPath(String.valueOf(id)).build();
+	}
+}
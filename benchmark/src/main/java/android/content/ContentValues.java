@@ -0,0 +1,166 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JVM stand-in
+ */
+public final class ContentValues
+{
+	private final HashMap<String, Object> _values;
+
+	public ContentValues()
+	{
+		_values = new HashMap<>(8);
+	}
+
+	public ContentValues(int size)
+	{
+		_values = new HashMap<>(size, 1.0f);
+	}
+
+	public ContentValues(ContentValues from)
+	{
+		_values = new HashMap<>(from._values);
+	}
+
+	public void put(String key, String value)
+	{
+		_values.put(key, value);
+	}
+
+	public void put(String key, Byte value)
+	{
+		_values.put(key, value);
+	}
+
+	public void put(String key, Short value)
+	{
+		_values.put(key, value);
+	}
+
+	public void put(String key, Integer value)
+	{
+		_values.put(key, value);
+	}
+
+	public void put(String key, Long value)
+	{
+		_values.put(key, value);
+	}
+
+	public void put(String key, Float value)
+	{
+		_values.put(key, value);
+	}
+
+	public void put(String key, Double value)
+	{
+		_values.put(key, value);
+	}
+
+	public void put(String key, Boolean value)
+	{
+		_values.put(key, value);
+	}
+
+	public void put(String key, byte[] value)
+	{
+		_values.put(key, value);
+	}
+
+	public void putNull(String key)
+	{
+		_values.put(key, null);
+	}
+
+	public void putAll(ContentValues other)
+	{
+		_values.putAll(other._values);
+	}
+
+	public int size()
+	{
+		return _values.size();
+	}
+
+	public boolean containsKey(String key)
+	{
+		return _values.containsKey(key);
+	}
+
+	public void remove(String key)
+	{
+		_values.remove(key);
+	}
+
+	public void clear()
+	{
+		_values.clear();
+	}
+
+	public Object get(String key)
+	{
+		return _values.get(key);
+	}
+
+	public String getAsString(String key)
+	{
+		final Object value = _values.get(key);
+
+		return (value != null ? value.toString() : null);
+	}
+
+	public Long getAsLong(String key)
+	{
+		final Object value = _values.get(key);
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		} else if (value instanceof CharSequence) {
+			try {
+				return Long.valueOf(value.toString());
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		return null;
+	}
+
+	public Integer getAsInteger(String key)
+	{
+		final Long value = getAsLong(key);
+
+		return (value != null ? value.intValue() : null);
+	}
+
+	public Set<Map.Entry<String, Object>> valueSet()
+	{
+		return _values.entrySet();
+	}
+
+	public Set<String> keySet()
+	{
+		return _values.keySet();
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return (o instanceof ContentValues && _values.equals(((ContentValues) o)._values));
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return _values.hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		return _values.toString();
+	}
+}
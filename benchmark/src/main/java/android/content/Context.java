@@ -0,0 +1,33 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * JVM stand-in: a content resolver and a directory for database files
+ */
+public class Context
+{
+	private final ContentResolver _contentResolver;
+	private final File _databaseDir;
+
+	public Context(File databaseDir)
+	{
+		_contentResolver = new ContentResolver(this);
+		_databaseDir = databaseDir;
+	}
+
+	public ContentResolver getContentResolver()
+	{
+		return _contentResolver;
+	}
+
+	public Context getApplicationContext()
+	{
+		return this;
+	}
+
+	public File getDatabasePath(String name)
+	{
+		return new File(_databaseDir, name);
+	}
+}
@@ -0,0 +1,26 @@
+package android.content;
+
+/**
+ * JVM stand-in
+ */
+public class OperationApplicationException extends Exception
+{
+	public OperationApplicationException()
+	{
+	}
+
+	public OperationApplicationException(String message)
+	{
+		super(message);
+	}
+
+	public OperationApplicationException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+
+	public OperationApplicationException(Throwable cause)
+	{
+		super(cause);
+	}
+}
@@ -0,0 +1,230 @@
+package android.database;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+/**
+ * JVM stand-in
+ */
+public abstract class AbstractCursor implements Cursor
+{
+	protected int mPos = -1;
+	protected boolean mClosed;
+
+	private Uri _notifyUri;
+
+	@Override
+	public abstract int getCount();
+
+	@Override
+	public abstract String[] getColumnNames();
+
+	@Override
+	public abstract String getString(int column);
+
+	@Override
+	public abstract short getShort(int column);
+
+	@Override
+	public abstract int getInt(int column);
+
+	@Override
+	public abstract long getLong(int column);
+
+	@Override
+	public abstract float getFloat(int column);
+
+	@Override
+	public abstract double getDouble(int column);
+
+	@Override
+	public abstract boolean isNull(int column);
+
+	@Override
+	public int getType(int column)
+	{
+		return FIELD_TYPE_STRING;
+	}
+
+	@Override
+	public byte[] getBlob(int column)
+	{
+		throw new UnsupportedOperationException("getBlob is not supported");
+	}
+
+	@Override
+	public int getColumnCount()
+	{
+		return getColumnNames().length;
+	}
+
+	@Override
+	public final int getPosition()
+	{
+		return mPos;
+	}
+
+	@Override
+	public final boolean moveToPosition(int position)
+	{
+		final int count = getCount();
+		if (position >= count) {
+			mPos = count;
+			return false;
+		}
+		if (position < 0) {
+			mPos = -1;
+			return false;
+		}
+		if (position == mPos) {
+			return true;
+		}
+
+		if (!onMove(mPos, position)) {
+			mPos = -1;
+			return false;
+		}
+		mPos = position;
+
+		return true;
+	}
+
+	public boolean onMove(int oldPosition, int newPosition)
+	{
+		return true;
+	}
+
+	@Override
+	public final boolean move(int offset)
+	{
+		return moveToPosition(mPos + offset);
+	}
+
+	@Override
+	public final boolean moveToFirst()
+	{
+		return moveToPosition(0);
+	}
+
+	@Override
+	public final boolean moveToLast()
+	{
+		return moveToPosition(getCount() - 1);
+	}
+
+	@Override
+	public final boolean moveToNext()
+	{
+		return moveToPosition(mPos + 1);
+	}
+
+	@Override
+	public final boolean moveToPrevious()
+	{
+		return moveToPosition(mPos - 1);
+	}
+
+	@Override
+	public final boolean isFirst()
+	{
+		return mPos == 0 && getCount() != 0;
+	}
+
+	@Override
+	public final boolean isLast()
+	{
+		final int count = getCount();
+
+		return mPos == (count - 1) && count != 0;
+	}
+
+	@Override
+	public final boolean isBeforeFirst()
+	{
+		return getCount() == 0 || mPos == -1;
+	}
+
+	@Override
+	public final boolean isAfterLast()
+	{
+		return getCount() == 0 || mPos == getCount();
+	}
+
+	@Override
+	public int getColumnIndex(String columnName)
+	{
+		final int lastDot = columnName.lastIndexOf('.');
+		if (lastDot != -1) {
+			columnName = columnName.substring(lastDot + 1);
+		}
+
+		final String[] columnNames = getColumnNames();
+		for (int i = 0; i < columnNames.length; i++) {
+			if (columnNames[i].equalsIgnoreCase(columnName)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	@Override
+	public int getColumnIndexOrThrow(String columnName)
+	{
+		final int index = getColumnIndex(columnName);
+		if (index < 0) {
+			throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+		}
+
+		return index;
+	}
+
+	@Override
+	public String getColumnName(int columnIndex)
+	{
+		return getColumnNames()[columnIndex];
+	}
+
+	@Override
+	public void close()
+	{
+		mClosed = true;
+	}
+
+	@Override
+	public boolean isClosed()
+	{
+		return mClosed;
+	}
+
+	@Override
+	public void registerContentObserver(ContentObserver observer)
+	{
+	}
+
+	@Override
+	public void unregisterContentObserver(ContentObserver observer)
+	{
+	}
+
+	@Override
+	public void registerDataSetObserver(DataSetObserver observer)
+	{
+	}
+
+	@Override
+	public void unregisterDataSetObserver(DataSetObserver observer)
+	{
+	}
+
+	@Override
+	public void setNotificationUri(ContentResolver cr, Uri notifyUri)
+	{
+		_notifyUri = notifyUri;
+	}
+
+	public Uri getNotificationUri()
+	{
+		return _notifyUri;
+	}
+}
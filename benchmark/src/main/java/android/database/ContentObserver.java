@@ -0,0 +1,11 @@
+package android.database;
+
+/**
+ * JVM stand-in
+ */
+public abstract class ContentObserver
+{
+	public void onChange(boolean selfChange)
+	{
+	}
+}
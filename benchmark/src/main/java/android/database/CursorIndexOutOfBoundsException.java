@@ -0,0 +1,12 @@
+package android.database;
+
+/**
+ * JVM stand-in
+ */
+public class CursorIndexOutOfBoundsException extends IndexOutOfBoundsException
+{
+	public CursorIndexOutOfBoundsException(String message)
+	{
+		super(message);
+	}
+}
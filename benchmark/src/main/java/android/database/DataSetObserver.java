@@ -0,0 +1,15 @@
+package android.database;
+
+/**
+ * JVM stand-in
+ */
+public abstract class DataSetObserver
+{
+	public void onChanged()
+	{
+	}
+
+	public void onInvalidated()
+	{
+	}
+}
@@ -0,0 +1,57 @@
+package android.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * JVM stand-in
+ */
+public class DatabaseUtils
+{
+	public static int getTypeOfObject(Object obj)
+	{
+		if (obj == null) {
+			return Cursor.FIELD_TYPE_NULL;
+		} else if (obj instanceof byte[]) {
+			return Cursor.FIELD_TYPE_BLOB;
+		} else if (obj instanceof Float || obj instanceof Double) {
+			return Cursor.FIELD_TYPE_FLOAT;
+		} else if (obj instanceof Long || obj instanceof Integer || obj instanceof Short || obj instanceof Byte) {
+			return Cursor.FIELD_TYPE_INTEGER;
+		}
+
+		return Cursor.FIELD_TYPE_STRING;
+	}
+
+	public static long longForQuery(SQLiteDatabase db, String query, String[] selectionArgs)
+	{
+		final Cursor cursor = db.rawQuery(query, selectionArgs);
+		try {
+			if (!cursor.moveToFirst()) {
+				throw new SQLException("no rows");
+			}
+
+			return cursor.getLong(0);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	public static String stringForQuery(SQLiteDatabase db, String query, String[] selectionArgs)
+	{
+		final Cursor cursor = db.rawQuery(query, selectionArgs);
+		try {
+			if (!cursor.moveToFirst()) {
+				throw new SQLException("no rows");
+			}
+
+			return cursor.getString(0);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	public static long queryNumEntries(SQLiteDatabase db, String table)
+	{
+		return longForQuery(db, "SELECT COUNT(*) FROM " + table, null);
+	}
+}
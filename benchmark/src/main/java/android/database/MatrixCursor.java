@@ -0,0 +1,155 @@
+package android.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM stand-in, also holds the rows of SQLiteDatabase queries. Conversions follow SQLite:
+ * text that is not a number reads as 0.
+ */
+public class MatrixCursor extends AbstractCursor
+{
+	private final String[] _columnNames;
+	private final List<Object[]> _rows;
+
+	public MatrixCursor(String[] columnNames)
+	{
+		this(columnNames, 16);
+	}
+
+	public MatrixCursor(String[] columnNames, int initialCapacity)
+	{
+		_columnNames = columnNames;
+		_rows = new ArrayList<>(Math.max(initialCapacity, 1));
+	}
+
+	public void addRow(Object[] columnValues)
+	{
+		if (columnValues.length != _columnNames.length) {
+			throw new IllegalArgumentException("columnNames.length = " + _columnNames.length
+				+ ", columnValues.length = " + columnValues.length);
+		}
+		_rows.add(columnValues.clone());
+	}
+
+	@Override
+	public int getCount()
+	{
+		return _rows.size();
+	}
+
+	@Override
+	public String[] getColumnNames()
+	{
+		return _columnNames;
+	}
+
+	@Override
+	public String getString(int column)
+	{
+		final Object value = _get(column);
+		if (value == null) {
+			return null;
+		} else if (value instanceof byte[]) {
+			return new String((byte[]) value);
+		}
+
+		return value.toString();
+	}
+
+	@Override
+	public short getShort(int column)
+	{
+		return (short) getLong(column);
+	}
+
+	@Override
+	public int getInt(int column)
+	{
+		return (int) getLong(column);
+	}
+
+	@Override
+	public long getLong(int column)
+	{
+		final Object value = _get(column);
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		} else if (value instanceof Boolean) {
+			return ((Boolean) value ? 1 : 0);
+		} else if (value instanceof String) {
+			try {
+				return Long.parseLong((String) value);
+			} catch (NumberFormatException e) {
+				try {
+					return (long) Double.parseDouble((String) value);
+				} catch (NumberFormatException e2) {
+					return 0;
+				}
+			}
+		}
+
+		return 0;
+	}
+
+	@Override
+	public float getFloat(int column)
+	{
+		return (float) getDouble(column);
+	}
+
+	@Override
+	public double getDouble(int column)
+	{
+		final Object value = _get(column);
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		} else if (value instanceof String) {
+			try {
+				return Double.parseDouble((String) value);
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+
+		return 0;
+	}
+
+	@Override
+	public byte[] getBlob(int column)
+	{
+		final Object value = _get(column);
+		if (value == null || value instanceof byte[]) {
+			return (byte[]) value;
+		}
+
+		return value.toString().getBytes();
+	}
+
+	@Override
+	public int getType(int column)
+	{
+		return DatabaseUtils.getTypeOfObject(_get(column));
+	}
+
+	@Override
+	public boolean isNull(int column)
+	{
+		return _get(column) == null;
+	}
+
+	private Object _get(int column)
+	{
+		if (column < 0 || column >= _columnNames.length) {
+			throw new CursorIndexOutOfBoundsException("Requested column: " + column + ", # of columns: " + _columnNames.length);
+		}
+		if (mPos < 0) {
+			throw new CursorIndexOutOfBoundsException("Before first row.");
+		}
+		if (mPos >= _rows.size()) {
+			throw new CursorIndexOutOfBoundsException("After last row.");
+		}
+
+		return _rows.get(mPos)[column];
+	}
+}
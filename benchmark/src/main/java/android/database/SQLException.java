@@ -0,0 +1,21 @@
+package android.database;
+
+/**
+ * JVM stand-in
+ */
+public class SQLException extends RuntimeException
+{
+	public SQLException()
+	{
+	}
+
+	public SQLException(String message)
+	{
+		super(message);
+	}
+
+	public SQLException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+}
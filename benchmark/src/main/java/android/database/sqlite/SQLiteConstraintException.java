@@ -0,0 +1,21 @@
+package android.database.sqlite;
+
+/**
+ * JVM stand-in
+ */
+public class SQLiteConstraintException extends SQLiteException
+{
+	public SQLiteConstraintException()
+	{
+	}
+
+	public SQLiteConstraintException(String message)
+	{
+		super(message);
+	}
+
+	public SQLiteConstraintException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+}
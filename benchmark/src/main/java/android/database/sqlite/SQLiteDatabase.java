@@ -0,0 +1,838 @@
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.SQLException;
+import android.os.CancellationSignal;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * JVM stand-in over sqlite-jdbc connections. Like Android's primary connection it keeps
+ * an LRU of prepared statements and copies query results into memory (CursorWindow).
+ * Writes and everything in a transaction are serialized on the primary connection, a thread
+ * in a transaction holds it until the outermost endTransaction(). With WAL, SELECTs outside
+ * a transaction run on a pool of read connections, like Android's, so readers run next to
+ * the writer; pragmas set on the primary connection do not reach them.
+ */
+public final class SQLiteDatabase
+{
+	public static final int CONFLICT_NONE = 0;
+	public static final int CONFLICT_ROLLBACK = 1;
+	public static final int CONFLICT_ABORT = 2;
+	public static final int CONFLICT_FAIL = 3;
+	public static final int CONFLICT_IGNORE = 4;
+	public static final int CONFLICT_REPLACE = 5;
+
+	public static final int SQLITE_MAX_LIKE_PATTERN_LENGTH = 50000;
+
+	private static final String[] CONFLICT_VALUES = {
+		"", " OR ROLLBACK", " OR ABORT", " OR FAIL", " OR IGNORE", " OR REPLACE"
+	};
+	private static final int DEFAULT_SQL_CACHE_SIZE = 25;
+	private static final int SQLITE_CONSTRAINT = 19;
+	private static final int MAX_READ_CONNECTIONS = 4;
+
+	public interface CursorFactory
+	{
+	}
+
+	private final String _path;
+	private final Connection _connection;
+	private final ReentrantLock _lock = new ReentrantLock();
+	private final ArrayDeque<boolean[]> _transactions = new ArrayDeque<>();
+	private boolean _transactionFailed;
+	private int _maxSqlCacheSize = DEFAULT_SQL_CACHE_SIZE;
+	private final LinkedHashMap<String, PreparedStatement> _statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+		{
+			if (size() > _maxSqlCacheSize) {
+				_closeQuietly(eldest.getValue());
+				return true;
+			}
+
+			return false;
+		}
+	};
+	private volatile boolean _writeAheadLogging;
+	private volatile boolean _open = true;
+
+	private final ArrayDeque<ReadConnection> _idleReaders = new ArrayDeque<>();
+	private int _readerCount; // guarded by _idleReaders
+
+	private SQLiteDatabase(String path)
+	{
+		_path = path;
+		try {
+			_connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+		} catch (java.sql.SQLException e) {
+			throw new SQLiteException("Can not open " + path, e);
+		}
+	}
+
+	/**
+	 * @param path file path or ":memory:"
+	 */
+	public static SQLiteDatabase openOrCreateDatabase(String path, CursorFactory factory)
+	{
+		if (!":memory:".equals(path)) {
+			final File parent = new File(path).getAbsoluteFile().getParentFile();
+			if (parent != null && !parent.exists() && !parent.mkdirs()) {
+				throw new SQLiteException("Can not create " + parent);
+			}
+		}
+
+		return new SQLiteDatabase(path);
+	}
+
+	public static SQLiteDatabase openOrCreateDatabase(File file, CursorFactory factory)
+	{
+		return openOrCreateDatabase(file.getPath(), factory);
+	}
+
+	public static boolean deleteDatabase(File file)
+	{
+		boolean deleted = file.delete();
+		deleted |= new File(file.getPath() + "-journal").delete();
+		deleted |= new File(file.getPath() + "-shm").delete();
+		deleted |= new File(file.getPath() + "-wal").delete();
+
+		return deleted;
+	}
+
+	public String getPath()
+	{
+		return _path;
+	}
+
+	public boolean isOpen()
+	{
+		return _open;
+	}
+
+	public boolean isReadOnly()
+	{
+		return false;
+	}
+
+	public void close()
+	{
+		_lock.lock();
+		try {
+			if (!_open) {
+				return;
+			}
+			_open = false;
+			for (PreparedStatement statement : _statements.values()) {
+				_closeQuietly(statement);
+			}
+			_statements.clear();
+			_connection.close();
+			_closeIdleReaders();
+		} catch (java.sql.SQLException e) {
+			throw _translate(e);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public void setMaxSqlCacheSize(int cacheSize)
+	{
+		_lock.lock();
+		try {
+			_maxSqlCacheSize = cacheSize;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public void setLocale(Locale locale)
+	{
+	}
+
+	public void setForeignKeyConstraintsEnabled(boolean enable)
+	{
+		execSQL("PRAGMA foreign_keys = " + (enable ? "ON" : "OFF"));
+	}
+
+	public boolean enableWriteAheadLogging()
+	{
+		if (":memory:".equals(_path)) {
+			return false;
+		}
+
+		_pragma("PRAGMA journal_mode = WAL");
+		_writeAheadLogging = true;
+
+		return true;
+	}
+
+	public void disableWriteAheadLogging()
+	{
+		_pragma("PRAGMA journal_mode = DELETE");
+		_writeAheadLogging = false;
+		_closeIdleReaders();
+	}
+
+	public boolean isWriteAheadLoggingEnabled()
+	{
+		return _writeAheadLogging;
+	}
+
+	public int getVersion()
+	{
+		final Cursor cursor = rawQuery("PRAGMA user_version", null);
+		try {
+			return (cursor.moveToFirst() ? cursor.getInt(0) : 0);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	public void setVersion(int version)
+	{
+		execSQL("PRAGMA user_version = " + version);
+	}
+
+	public long getPageSize()
+	{
+		final Cursor cursor = rawQuery("PRAGMA page_size", null);
+		try {
+			return (cursor.moveToFirst() ? cursor.getLong(0) : 0);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	public void setPageSize(long numBytes)
+	{
+		execSQL("PRAGMA page_size = " + numBytes);
+	}
+
+	// transactions
+
+	public void beginTransaction()
+	{
+		_lock.lock();
+		try {
+			if (_transactions.isEmpty()) {
+				_transactionFailed = false;
+				_connection.setAutoCommit(false);
+			}
+		} catch (java.sql.SQLException e) {
+			_lock.unlock();
+			throw _translate(e);
+		}
+		_transactions.push(new boolean[1]);
+	}
+
+	public void beginTransactionNonExclusive()
+	{
+		beginTransaction();
+	}
+
+	public void setTransactionSuccessful()
+	{
+		_checkTransaction();
+
+		final boolean[] transaction = _transactions.peek();
+		if (transaction[0]) {
+			throw new IllegalStateException("setTransactionSuccessful may only be called once per call to beginTransaction.");
+		}
+		transaction[0] = true;
+	}
+
+	public void endTransaction()
+	{
+		_checkTransaction();
+
+		try {
+			final boolean[] transaction = _transactions.pop();
+			if (!transaction[0]) {
+				_transactionFailed = true;
+			}
+
+			if (_transactions.isEmpty()) {
+				if (_transactionFailed) {
+					_connection.rollback();
+				} else {
+					_connection.commit();
+				}
+				_connection.setAutoCommit(true);
+			}
+		} catch (java.sql.SQLException e) {
+			throw _translate(e);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public boolean inTransaction()
+	{
+		return _lock.isHeldByCurrentThread() && !_transactions.isEmpty();
+	}
+
+	public boolean yieldIfContendedSafely()
+	{
+		return yieldIfContendedSafely(0);
+	}
+
+	/**
+	 * Commits and lets waiting threads run when the outermost transaction has no nested ones
+	 */
+	public boolean yieldIfContendedSafely(long sleepAfterYieldDelay)
+	{
+		if (!inTransaction() || _transactions.size() != 1 || _lock.getHoldCount() != 1 || !_lock.hasQueuedThreads()) {
+			return false;
+		}
+
+		setTransactionSuccessful();
+		endTransaction();
+		if (sleepAfterYieldDelay > 0) {
+			try {
+				Thread.sleep(sleepAfterYieldDelay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		beginTransaction();
+
+		return true;
+	}
+
+	// statements
+
+	public void execSQL(String sql)
+	{
+		execSQL(sql, null);
+	}
+
+	public void execSQL(String sql, Object[] bindArgs)
+	{
+		_lock.lock();
+		try {
+			if (bindArgs == null || bindArgs.length == 0) {
+				try (Statement statement = _connection.createStatement()) {
+					statement.execute(sql);
+				}
+			} else {
+				final PreparedStatement statement = _prepare(sql);
+				_bind(statement, bindArgs, bindArgs.length);
+				statement.execute();
+			}
+		} catch (java.sql.SQLException e) {
+			throw _translate(e);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public SQLiteStatement compileStatement(String sql)
+	{
+		final SQLiteStatement statement = new SQLiteStatement(this, sql);
+		_lock.lock();
+		try {
+			statement.setStatement(_connection.prepareStatement(sql));
+		} catch (java.sql.SQLException e) {
+			throw _translate(e);
+		} finally {
+			_lock.unlock();
+		}
+
+		return statement;
+	}
+
+	public Cursor rawQuery(String sql, String[] selectionArgs)
+	{
+		return rawQuery(sql, selectionArgs, null);
+	}
+
+	public Cursor rawQuery(String sql, String[] selectionArgs, CancellationSignal cancellationSignal)
+	{
+		if (cancellationSignal != null) {
+			cancellationSignal.throwIfCanceled();
+		}
+
+		if (_writeAheadLogging && !inTransaction() && _isSelect(sql)) {
+			final ReadConnection reader = _acquireReader();
+			try {
+				return _query(reader.prepare(sql), selectionArgs, cancellationSignal);
+			} catch (java.sql.SQLException e) {
+				throw _translate(e);
+			} finally {
+				_releaseReader(reader);
+			}
+		}
+
+		_lock.lock();
+		try {
+			return _query(_prepare(sql), selectionArgs, cancellationSignal);
+		} catch (java.sql.SQLException e) {
+			throw _translate(e);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	private static Cursor _query(PreparedStatement statement, String[] selectionArgs, CancellationSignal cancellationSignal)
+		throws java.sql.SQLException
+	{
+		_bind(statement, selectionArgs, (selectionArgs != null ? selectionArgs.length : 0));
+		if (!statement.execute()) {
+			return new MatrixCursor(new String[0], 0);
+		}
+
+		try (ResultSet resultSet = statement.getResultSet()) {
+			final ResultSetMetaData metaData = resultSet.getMetaData();
+			final String[] columns = new String[metaData.getColumnCount()];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = metaData.getColumnLabel(i + 1);
+			}
+
+			final MatrixCursor cursor = new MatrixCursor(columns);
+			final Object[] row = new Object[columns.length];
+			int count = 0;
+			while (resultSet.next()) {
+				for (int i = 0; i < columns.length; i++) {
+					final Object value = resultSet.getObject(i + 1);
+					row[i] = (value instanceof Integer ? Long.valueOf((Integer) value) : value);
+				}
+				cursor.addRow(row);
+
+				if (cancellationSignal != null && (++count & 0xff) == 0) {
+					cancellationSignal.throwIfCanceled();
+				}
+			}
+
+			return cursor;
+		}
+	}
+
+	// read connections
+
+	private static boolean _isSelect(String sql)
+	{
+		final String trimmed = sql.trim();
+
+		return trimmed.regionMatches(true, 0, "SELECT", 0, 6) || trimmed.regionMatches(true, 0, "WITH", 0, 4);
+	}
+
+	private ReadConnection _acquireReader()
+	{
+		synchronized (_idleReaders) {
+			while (true) {
+				if (!_open) {
+					throw new IllegalStateException("attempt to re-open an already-closed object: " + _path);
+				}
+
+				final ReadConnection reader = _idleReaders.pollFirst();
+				if (reader != null) {
+					return reader;
+				}
+				if (_readerCount < MAX_READ_CONNECTIONS) {
+					_readerCount++;
+					break;
+				}
+
+				try {
+					_idleReaders.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLiteException("Interrupted waiting for a read connection");
+				}
+			}
+		}
+
+		try {
+			return new ReadConnection(DriverManager.getConnection("jdbc:sqlite:" + _path));
+		} catch (java.sql.SQLException e) {
+			synchronized (_idleReaders) {
+				_readerCount--;
+				_idleReaders.notify();
+			}
+			throw _translate(e);
+		}
+	}
+
+	private void _releaseReader(ReadConnection reader)
+	{
+		synchronized (_idleReaders) {
+			if (_open && _writeAheadLogging) {
+				_idleReaders.addFirst(reader);
+			} else {
+				reader.close();
+				_readerCount--;
+			}
+			_idleReaders.notify();
+		}
+	}
+
+	private void _closeIdleReaders()
+	{
+		synchronized (_idleReaders) {
+			for (ReadConnection reader : _idleReaders) {
+				reader.close();
+				_readerCount--;
+			}
+			_idleReaders.clear();
+			_idleReaders.notifyAll();
+		}
+	}
+
+	private static final class ReadConnection
+	{
+		private final Connection _connection;
+		private final Map<String, PreparedStatement> _statements = new HashMap<>();
+
+		ReadConnection(Connection connection)
+		{
+			_connection = connection;
+		}
+
+		PreparedStatement prepare(String sql) throws java.sql.SQLException
+		{
+			PreparedStatement statement = _statements.get(sql);
+			if (statement == null) {
+				statement = _connection.prepareStatement(sql);
+				_statements.put(sql, statement);
+			} else {
+				statement.clearParameters();
+			}
+
+			return statement;
+		}
+
+		void close()
+		{
+			for (PreparedStatement statement : _statements.values()) {
+				_closeQuietly(statement);
+			}
+			try {
+				_connection.close();
+			} catch (java.sql.SQLException ignored) {
+			}
+		}
+	}
+
+	public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy)
+	{
+		return query(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, null, null);
+	}
+
+	public Cursor query(
+		String table,
+		String[] columns,
+		String selection,
+		String[] selectionArgs,
+		String groupBy,
+		String having,
+		String orderBy,
+		String limit
+	)
+	{
+		return query(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit, null);
+	}
+
+	public Cursor query(
+		boolean distinct,
+		String table,
+		String[] columns,
+		String selection,
+		String[] selectionArgs,
+		String groupBy,
+		String having,
+		String orderBy,
+		String limit,
+		CancellationSignal cancellationSignal
+	)
+	{
+		final String sql = SQLiteQueryBuilder.buildQueryString(distinct, table, columns, selection, groupBy, having, orderBy, limit);
+
+		return rawQuery(sql, selectionArgs, cancellationSignal);
+	}
+
+	public long insert(String table, String nullColumnHack, ContentValues values)
+	{
+		try {
+			return insertWithOnConflict(table, nullColumnHack, values, CONFLICT_NONE);
+		} catch (SQLException e) {
+			return -1;
+		}
+	}
+
+	public long insertOrThrow(String table, String nullColumnHack, ContentValues values)
+	{
+		return insertWithOnConflict(table, nullColumnHack, values, CONFLICT_NONE);
+	}
+
+	public long replace(String table, String nullColumnHack, ContentValues values)
+	{
+		try {
+			return insertWithOnConflict(table, nullColumnHack, values, CONFLICT_REPLACE);
+		} catch (SQLException e) {
+			return -1;
+		}
+	}
+
+	public long insertWithOnConflict(String table, String nullColumnHack, ContentValues values, int conflictAlgorithm)
+	{
+		final StringBuilder sql = new StringBuilder("INSERT").append(CONFLICT_VALUES[conflictAlgorithm])
+			.append(" INTO ").append(table).append('(');
+
+		final int size = (values != null ? values.size() : 0);
+		final Object[] bindArgs = new Object[size];
+		if (size > 0) {
+			int i = 0;
+			for (Map.Entry<String, Object> entry : values.valueSet()) {
+				sql.append(i > 0 ? "," : "").append(entry.getKey());
+				bindArgs[i++] = entry.getValue();
+			}
+			sql.append(") VALUES (");
+			for (i = 0; i < size; i++) {
+				sql.append(i > 0 ? ",?" : "?");
+			}
+		} else {
+			sql.append(nullColumnHack).append(") VALUES (NULL");
+		}
+		sql.append(')');
+
+		_lock.lock();
+		try {
+			final PreparedStatement statement = _prepare(sql.toString());
+			_bind(statement, bindArgs, size);
+
+			return (statement.executeUpdate() > 0 ? _lastInsertRowId() : -1);
+		} catch (java.sql.SQLException e) {
+			throw _translate(e);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public int update(String table, ContentValues values, String whereClause, String[] whereArgs)
+	{
+		return updateWithOnConflict(table, values, whereClause, whereArgs, CONFLICT_NONE);
+	}
+
+	public int updateWithOnConflict(String table, ContentValues values, String whereClause, String[] whereArgs, int conflictAlgorithm)
+	{
+		if (values == null || values.size() == 0) {
+			throw new IllegalArgumentException("Empty values");
+		}
+
+		final StringBuilder sql = new StringBuilder("UPDATE").append(CONFLICT_VALUES[conflictAlgorithm])
+			.append(' ').append(table).append(" SET ");
+
+		final int argsSize = (whereArgs != null ? whereArgs.length : 0);
+		final Object[] bindArgs = new Object[values.size() + argsSize];
+		int i = 0;
+		for (Map.Entry<String, Object> entry : values.valueSet()) {
+			sql.append(i > 0 ? "," : "").append(entry.getKey()).append("=?");
+			bindArgs[i++] = entry.getValue();
+		}
+		for (int j = 0; j < argsSize; j++) {
+			bindArgs[i++] = whereArgs[j];
+		}
+		if (whereClause != null && !whereClause.isEmpty()) {
+			sql.append(" WHERE ").append(whereClause);
+		}
+
+		return _executeUpdate(sql.toString(), bindArgs);
+	}
+
+	public int delete(String table, String whereClause, String[] whereArgs)
+	{
+		final String sql = "DELETE FROM " + table
+			+ (whereClause != null && !whereClause.isEmpty() ? " WHERE " + whereClause : "");
+
+		return _executeUpdate(sql, whereArgs);
+	}
+
+	// SQLiteStatement support
+
+	int executeUpdate(SQLiteStatement statement)
+	{
+		_lock.lock();
+		try {
+			final PreparedStatement prepared = _getPrepared(statement);
+			_bind(prepared, statement._bindArgs, prepared.getParameterMetaData().getParameterCount());
+
+			return prepared.executeUpdate();
+		} catch (java.sql.SQLException e) {
+			throw _translate(e);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	long executeInsert(SQLiteStatement statement)
+	{
+		_lock.lock();
+		try {
+			return (executeUpdate(statement) > 0 ? _lastInsertRowId() : -1);
+		} catch (java.sql.SQLException e) {
+			throw _translate(e);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	String simpleQuery(SQLiteStatement statement)
+	{
+		_lock.lock();
+		try {
+			final PreparedStatement prepared = _getPrepared(statement);
+			_bind(prepared, statement._bindArgs, prepared.getParameterMetaData().getParameterCount());
+			try (ResultSet resultSet = prepared.executeQuery()) {
+				if (!resultSet.next()) {
+					throw new SQLiteException("no rows");
+				}
+
+				return resultSet.getString(1);
+			}
+		} catch (java.sql.SQLException e) {
+			throw _translate(e);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	void closeStatement(SQLiteStatement statement)
+	{
+		_lock.lock();
+		try {
+			final PreparedStatement prepared = statement.getStatement();
+			if (prepared != null) {
+				_closeQuietly(prepared);
+				statement.setStatement(null);
+			}
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	// internals, called with _lock held
+
+	private PreparedStatement _getPrepared(SQLiteStatement statement)
+	{
+		final PreparedStatement prepared = statement.getStatement();
+		if (prepared == null) {
+			throw new IllegalStateException("attempt to re-open an already-closed object: " + statement);
+		}
+
+		return prepared;
+	}
+
+	private int _executeUpdate(String sql, Object[] bindArgs)
+	{
+		_lock.lock();
+		try {
+			final PreparedStatement statement = _prepare(sql);
+			_bind(statement, bindArgs, (bindArgs != null ? bindArgs.length : 0));
+
+			return statement.executeUpdate();
+		} catch (java.sql.SQLException e) {
+			throw _translate(e);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	private long _lastInsertRowId() throws java.sql.SQLException
+	{
+		try (ResultSet resultSet = _prepare("SELECT last_insert_rowid()").executeQuery()) {
+			return (resultSet.next() ? resultSet.getLong(1) : -1);
+		}
+	}
+
+	private PreparedStatement _prepare(String sql) throws java.sql.SQLException
+	{
+		if (!_open) {
+			throw new IllegalStateException("attempt to re-open an already-closed object: " + _path);
+		}
+
+		PreparedStatement statement = _statements.get(sql);
+		if (statement == null) {
+			statement = _connection.prepareStatement(sql);
+			_statements.put(sql, statement);
+		} else {
+			statement.clearParameters();
+		}
+
+		return statement;
+	}
+
+	private void _pragma(String sql)
+	{
+		final Cursor cursor = rawQuery(sql, null);
+		cursor.close();
+	}
+
+	private void _checkTransaction()
+	{
+		if (!inTransaction()) {
+			throw new IllegalStateException("Cannot perform this operation because there is no current transaction.");
+		}
+	}
+
+	private static void _bind(PreparedStatement statement, Object[] bindArgs, int count) throws java.sql.SQLException
+	{
+		for (int i = 0; i < count; i++) {
+			final Object value = (bindArgs != null && i < bindArgs.length ? bindArgs[i] : null);
+			final int index = i + 1;
+			if (value == null) {
+				statement.setNull(index, java.sql.Types.NULL);
+			} else if (value instanceof String) {
+				statement.setString(index, (String) value);
+			} else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+				statement.setLong(index, ((Number) value).longValue());
+			} else if (value instanceof Double || value instanceof Float) {
+				statement.setDouble(index, ((Number) value).doubleValue());
+			} else if (value instanceof Boolean) {
+				statement.setLong(index, (Boolean) value ? 1 : 0);
+			} else if (value instanceof byte[]) {
+				statement.setBytes(index, (byte[]) value);
+			} else {
+				statement.setString(index, value.toString());
+			}
+		}
+	}
+
+	private static SQLException _translate(java.sql.SQLException e)
+	{
+		if ((e.getErrorCode() & 0xff) == SQLITE_CONSTRAINT) {
+			return new SQLiteConstraintException(e.getMessage(), e);
+		}
+
+		return new SQLiteException(e.getMessage(), e);
+	}
+
+	private static void _closeQuietly(Statement statement)
+	{
+		try {
+			statement.close();
+		} catch (java.sql.SQLException ignored) {
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SQLiteDatabase: " + _path;
+	}
+}
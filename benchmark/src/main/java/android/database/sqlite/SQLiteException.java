@@ -0,0 +1,23 @@
+package android.database.sqlite;
+
+import android.database.SQLException;
+
+/**
+ * JVM stand-in
+ */
+public class SQLiteException extends SQLException
+{
+	public SQLiteException()
+	{
+	}
+
+	public SQLiteException(String message)
+	{
+		super(message);
+	}
+
+	public SQLiteException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+}
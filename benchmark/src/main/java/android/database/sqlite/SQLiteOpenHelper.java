@@ -0,0 +1,129 @@
+package android.database.sqlite;
+
+import android.content.Context;
+
+/**
+ * JVM stand-in, a null name opens an in-memory database
+ */
+public abstract class SQLiteOpenHelper
+{
+	private final Context _context;
+	private final String _name;
+	private final SQLiteDatabase.CursorFactory _factory;
+	private final int _version;
+
+	private SQLiteDatabase _database;
+	private boolean _initializing;
+	private boolean _writeAheadLogging;
+
+	public SQLiteOpenHelper(Context context, String name, SQLiteDatabase.CursorFactory factory, int version)
+	{
+		if (version < 1) {
+			throw new IllegalArgumentException("Version must be >= 1, was " + version);
+		}
+
+		_context = context;
+		_name = name;
+		_factory = factory;
+		_version = version;
+	}
+
+	public String getDatabaseName()
+	{
+		return _name;
+	}
+
+	public synchronized void setWriteAheadLoggingEnabled(boolean enabled)
+	{
+		_writeAheadLogging = enabled;
+		if (_database != null && _database.isOpen()) {
+			if (enabled) {
+				_database.enableWriteAheadLogging();
+			} else {
+				_database.disableWriteAheadLogging();
+			}
+		}
+	}
+
+	public SQLiteDatabase getReadableDatabase()
+	{
+		return getWritableDatabase();
+	}
+
+	public synchronized SQLiteDatabase getWritableDatabase()
+	{
+		if (_database != null && _database.isOpen()) {
+			return _database;
+		}
+		if (_initializing) {
+			throw new IllegalStateException("getDatabase called recursively");
+		}
+
+		_initializing = true;
+		SQLiteDatabase db = null;
+		try {
+			db = SQLiteDatabase.openOrCreateDatabase(
+				(_name != null ? _context.getDatabasePath(_name).getPath() : ":memory:"),
+				_factory
+			);
+			if (_writeAheadLogging) {
+				db.enableWriteAheadLogging();
+			}
+
+			onConfigure(db);
+
+			final int version = db.getVersion();
+			if (version != _version) {
+				db.beginTransaction();
+				try {
+					if (version == 0) {
+						onCreate(db);
+					} else if (version > _version) {
+						onDowngrade(db, version, _version);
+					} else {
+						onUpgrade(db, version, _version);
+					}
+					db.setVersion(_version);
+					db.setTransactionSuccessful();
+				} finally {
+					db.endTransaction();
+				}
+			}
+
+			onOpen(db);
+
+			_database = db;
+			return db;
+		} finally {
+			_initializing = false;
+			if (db != null && db != _database) {
+				db.close();
+			}
+		}
+	}
+
+	public synchronized void close()
+	{
+		if (_database != null && _database.isOpen()) {
+			_database.close();
+		}
+		_database = null;
+	}
+
+	public void onConfigure(SQLiteDatabase db)
+	{
+	}
+
+	public abstract void onCreate(SQLiteDatabase db);
+
+	public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+	public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion)
+	{
+		throw new SQLiteException("Can't downgrade database from version " + oldVersion + " to " + newVersion);
+	}
+
+	public void onOpen(SQLiteDatabase db)
+	{
+	}
+}
@@ -0,0 +1,79 @@
+package android.database.sqlite;
+
+import java.util.Arrays;
+
+/**
+ * JVM stand-in: bind arguments are collected and applied when the statement is executed
+ */
+public abstract class SQLiteProgram
+{
+	final SQLiteDatabase _db;
+	final String _sql;
+	Object[] _bindArgs = new Object[8];
+
+	SQLiteProgram(SQLiteDatabase db, String sql)
+	{
+		_db = db;
+		_sql = sql;
+	}
+
+	public void bindNull(int index)
+	{
+		bindObject(index, null);
+	}
+
+	public void bindLong(int index, long value)
+	{
+		bindObject(index, value);
+	}
+
+	public void bindDouble(int index, double value)
+	{
+		bindObject(index, value);
+	}
+
+	public void bindString(int index, String value)
+	{
+		if (value == null) {
+			throw new IllegalArgumentException("the bind value at index " + index + " is null");
+		}
+		bindObject(index, value);
+	}
+
+	public void bindBlob(int index, byte[] value)
+	{
+		if (value == null) {
+			throw new IllegalArgumentException("the bind value at index " + index + " is null");
+		}
+		bindObject(index, value);
+	}
+
+	public void bindAllArgsAsStrings(String[] bindArgs)
+	{
+		if (bindArgs != null) {
+			for (int i = bindArgs.length; i != 0; i--) {
+				bindString(i, bindArgs[i - 1]);
+			}
+		}
+	}
+
+	public void clearBindings()
+	{
+		Arrays.fill(_bindArgs, null);
+	}
+
+	public void close()
+	{
+	}
+
+	void bindObject(int index, Object value)
+	{
+		if (index < 1) {
+			throw new IllegalArgumentException("Cannot bind argument at index " + index);
+		}
+		if (index > _bindArgs.length) {
+			_bindArgs = Arrays.copyOf(_bindArgs, Math.max(index, _bindArgs.length * 2));
+		}
+		_bindArgs[index - 1] = value;
+	}
+}
@@ -0,0 +1,149 @@
+package android.database.sqlite;
+
+import android.database.Cursor;
+import android.os.CancellationSignal;
+
+import java.util.Map;
+
+/**
+ * JVM stand-in without projection maps and strict mode
+ */
+public class SQLiteQueryBuilder
+{
+	private String _tables = "";
+	private boolean _distinct;
+	private StringBuilder _where;
+
+	public void setTables(String inTables)
+	{
+		_tables = inTables;
+	}
+
+	public String getTables()
+	{
+		return _tables;
+	}
+
+	public void setDistinct(boolean distinct)
+	{
+		_distinct = distinct;
+	}
+
+	public void setProjectionMap(Map<String, String> columnMap)
+	{
+		if (columnMap != null) {
+			throw new UnsupportedOperationException("Projection maps are not supported");
+		}
+	}
+
+	public void appendWhere(CharSequence inWhere)
+	{
+		if (_where == null) {
+			_where = new StringBuilder(inWhere.length() + 16);
+		}
+		_where.append(inWhere);
+	}
+
+	public static String buildQueryString(
+		boolean distinct,
+		String tables,
+		String[] columns,
+		String where,
+		String groupBy,
+		String having,
+		String orderBy,
+		String limit
+	)
+	{
+		if (_isEmpty(groupBy) && !_isEmpty(having)) {
+			throw new IllegalArgumentException("HAVING clauses are only permitted when using a groupBy clause");
+		}
+
+		final StringBuilder query = new StringBuilder(120).append("SELECT ");
+		if (distinct) {
+			query.append("DISTINCT ");
+		}
+		if (columns != null && columns.length != 0) {
+			for (int i = 0; i < columns.length; i++) {
+				query.append(i > 0 ? ", " : "").append(columns[i]);
+			}
+			query.append(' ');
+		} else {
+			query.append("* ");
+		}
+		query.append("FROM ").append(tables);
+		_appendClause(query, " WHERE ", where);
+		_appendClause(query, " GROUP BY ", groupBy);
+		_appendClause(query, " HAVING ", having);
+		_appendClause(query, " ORDER BY ", orderBy);
+		_appendClause(query, " LIMIT ", limit);
+
+		return query.toString();
+	}
+
+	public String buildQuery(String[] projectionIn, String selection, String groupBy, String having, String sortOrder, String limit)
+	{
+		String where = selection;
+		if (_where != null && _where.length() > 0) {
+			where = (_isEmpty(selection) ? _where.toString() : "(" + _where + ") AND (" + selection + ")");
+		}
+
+		return buildQueryString(_distinct, _tables, projectionIn, where, groupBy, having, sortOrder, limit);
+	}
+
+	public Cursor query(
+		SQLiteDatabase db,
+		String[] projectionIn,
+		String selection,
+		String[] selectionArgs,
+		String groupBy,
+		String having,
+		String sortOrder
+	)
+	{
+		return query(db, projectionIn, selection, selectionArgs, groupBy, having, sortOrder, null, null);
+	}
+
+	public Cursor query(
+		SQLiteDatabase db,
+		String[] projectionIn,
+		String selection,
+		String[] selectionArgs,
+		String groupBy,
+		String having,
+		String sortOrder,
+		String limit
+	)
+	{
+		return query(db, projectionIn, selection, selectionArgs, groupBy, having, sortOrder, limit, null);
+	}
+
+	public Cursor query(
+		SQLiteDatabase db,
+		String[] projectionIn,
+		String selection,
+		String[] selectionArgs,
+		String groupBy,
+		String having,
+		String sortOrder,
+		String limit,
+		CancellationSignal cancellationSignal
+	)
+	{
+		final String sql = buildQuery(projectionIn, selection, groupBy, having, sortOrder, limit);
+
+		return db.rawQuery(sql, selectionArgs, cancellationSignal);
+	}
+
+	private static void _appendClause(StringBuilder builder, String name, String clause)
+	{
+		if (!_isEmpty(clause)) {
+			builder.append(name).append(clause);
+		}
+	}
+
+	private static boolean _isEmpty(String value)
+	{
+		return (value == null || value.isEmpty());
+	}
+}
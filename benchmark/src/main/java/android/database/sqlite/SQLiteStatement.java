@@ -0,0 +1,63 @@
+package android.database.sqlite;
+
+import java.sql.PreparedStatement;
+
+/**
+ * JVM stand-in, keeps its JDBC statement prepared until close()
+ */
+public final class SQLiteStatement extends SQLiteProgram
+{
+	private PreparedStatement _statement;
+
+	SQLiteStatement(SQLiteDatabase db, String sql)
+	{
+		super(db, sql);
+	}
+
+	public void execute()
+	{
+		_db.executeUpdate(this);
+	}
+
+	public int executeUpdateDelete()
+	{
+		return _db.executeUpdate(this);
+	}
+
+	public long executeInsert()
+	{
+		return _db.executeInsert(this);
+	}
+
+	public long simpleQueryForLong()
+	{
+		return Long.parseLong(simpleQueryForString());
+	}
+
+	public String simpleQueryForString()
+	{
+		return _db.simpleQuery(this);
+	}
+
+	@Override
+	public void close()
+	{
+		_db.closeStatement(this);
+	}
+
+	PreparedStatement getStatement()
+	{
+		return _statement;
+	}
+
+	void setStatement(PreparedStatement statement)
+	{
+		_statement = statement;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SQLiteStatement: " + _sql;
+	}
+}
@@ -0,0 +1,389 @@
+package android.net;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JVM stand-in for hierarchical uris ("scheme://authority/path?query"), fragments are not supported
+ */
+public abstract class Uri implements Comparable<Uri>
+{
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	Uri()
+	{
+	}
+
+	public static Uri parse(String uriString)
+	{
+		String rest = uriString;
+		String scheme = null;
+		String authority = null;
+		String query = null;
+
+		final int colon = rest.indexOf(':');
+		final int firstSlash = rest.indexOf('/');
+		if (colon > 0 && (firstSlash < 0 || colon < firstSlash)) {
+			scheme = rest.substring(0, colon);
+			rest = rest.substring(colon + 1);
+		}
+		final int hash = rest.indexOf('#');
+		if (hash >= 0) {
+			rest = rest.substring(0, hash);
+		}
+		final int question = rest.indexOf('?');
+		if (question >= 0) {
+			query = rest.substring(question + 1);
+			rest = rest.substring(0, question);
+		}
+		if (rest.startsWith("//")) {
+			final int slash = rest.indexOf('/', 2);
+			authority = (slash < 0 ? rest.substring(2) : rest.substring(2, slash));
+			rest = (slash < 0 ? "" : rest.substring(slash));
+		}
+
+		return new HierarchicalUri(scheme, authority, rest, query);
+	}
+
+	public static Uri withAppendedPath(Uri baseUri, String pathSegment)
+	{
+		return baseUri.buildUpon().appendEncodedPath(pathSegment).build();
+	}
+
+	public static String encode(String s)
+	{
+		return encode(s, null);
+	}
+
+	public static String encode(String s, String allow)
+	{
+		if (s == null) {
+			return null;
+		}
+
+		StringBuilder builder = null;
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (
+				(c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+					|| "_-!.~'()*".indexOf(c) >= 0
+					|| (allow != null && allow.indexOf(c) >= 0)
+				) {
+				if (builder != null) {
+					builder.append(c);
+				}
+				continue;
+			}
+
+			if (builder == null) {
+				builder = new StringBuilder(s.length() + 16).append(s, 0, i);
+			}
+			final int end = (Character.isHighSurrogate(c) && i + 1 < s.length() ? i + 2 : i + 1);
+			for (byte b : s.substring(i, end).getBytes(UTF_8)) {
+				builder.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+			}
+			i = end - 1;
+		}
+
+		return (builder != null ? builder.toString() : s);
+	}
+
+	public static String decode(String s)
+	{
+		if (s == null) {
+			return null;
+		}
+		if (s.indexOf('%') < 0) {
+			return s;
+		}
+
+		try {
+			return URLDecoder.decode(s.replace("+", "%2B"), "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	public abstract String getScheme();
+
+	public abstract String getAuthority();
+
+	public abstract String getEncodedAuthority();
+
+	public abstract String getPath();
+
+	public abstract String getEncodedPath();
+
+	public abstract String getQuery();
+
+	public abstract String getEncodedQuery();
+
+	public abstract List<String> getPathSegments();
+
+	public abstract String getLastPathSegment();
+
+	public abstract Builder buildUpon();
+
+	public String getQueryParameter(String key)
+	{
+		final String query = getEncodedQuery();
+		if (query == null) {
+			return null;
+		}
+
+		final String encodedKey = encode(key, null);
+		int start = 0;
+		while (start <= query.length()) {
+			int end = query.indexOf('&', start);
+			if (end < 0) {
+				end = query.length();
+			}
+			final int separator = query.indexOf('=', start);
+			final int keyEnd = (separator < 0 || separator > end ? end : separator);
+			if (query.regionMatches(start, encodedKey, 0, encodedKey.length()) && keyEnd - start == encodedKey.length()) {
+				if (keyEnd == end) {
+					return "";
+				}
+				try {
+					return URLDecoder.decode(query.substring(keyEnd + 1, end), "UTF-8");
+				} catch (UnsupportedEncodingException e) {
+					throw new AssertionError(e);
+				}
+			}
+			start = end + 1;
+		}
+
+		return null;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return (o instanceof Uri && toString().equals(o.toString()));
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return toString().hashCode();
+	}
+
+	@Override
+	public int compareTo(Uri other)
+	{
+		return toString().compareTo(other.toString());
+	}
+
+	private static class HierarchicalUri extends Uri
+	{
+		private final String _scheme;
+		private final String _authority;
+		private final String _path;
+		private final String _query;
+		private final String _string;
+		private volatile List<String> _pathSegments;
+
+		HierarchicalUri(String scheme, String authority, String path, String query)
+		{
+			_scheme = scheme;
+			_authority = authority;
+			_path = (path != null ? path : "");
+			_query = query;
+
+			final StringBuilder builder = new StringBuilder();
+			if (scheme != null) {
+				builder.append(scheme).append(':');
+			}
+			if (authority != null) {
+				builder.append("//").append(authority);
+			}
+			builder.append(_path);
+			if (query != null) {
+				builder.append('?').append(query);
+			}
+			_string = builder.toString();
+		}
+
+		@Override
+		public String getScheme()
+		{
+			return _scheme;
+		}
+
+		@Override
+		public String getAuthority()
+		{
+			return decode(_authority);
+		}
+
+		@Override
+		public String getEncodedAuthority()
+		{
+			return _authority;
+		}
+
+		@Override
+		public String getPath()
+		{
+			return decode(_path);
+		}
+
+		@Override
+		public String getEncodedPath()
+		{
+			return _path;
+		}
+
+		@Override
+		public String getQuery()
+		{
+			return decode(_query);
+		}
+
+		@Override
+		public String getEncodedQuery()
+		{
+			return _query;
+		}
+
+		@Override
+		public List<String> getPathSegments()
+		{
+			List<String> segments = _pathSegments;
+			if (segments == null) {
+				final List<String> list = new ArrayList<>();
+				for (String segment : _path.split("/")) {
+					if (!segment.isEmpty()) {
+						list.add(decode(segment));
+					}
+				}
+				_pathSegments = segments = Collections.unmodifiableList(list);
+			}
+
+			return segments;
+		}
+
+		@Override
+		public String getLastPathSegment()
+		{
+			final List<String> segments = getPathSegments();
+
+			return (segments.isEmpty() ? null : segments.get(segments.size() - 1));
+		}
+
+		@Override
+		public Builder buildUpon()
+		{
+			return new Builder()
+				.scheme(_scheme)
+				.encodedAuthority(_authority)
+				.encodedPath(_path)
+				.encodedQuery(_query);
+		}
+
+		@Override
+		public String toString()
+		{
+			return _string;
+		}
+	}
+
+	public static final class Builder
+	{
+		private String _scheme;
+		private String _authority;
+		private StringBuilder _path = new StringBuilder();
+		private StringBuilder _query;
+
+		public Builder()
+		{
+		}
+
+		public Builder scheme(String scheme)
+		{
+			_scheme = scheme;
+			return this;
+		}
+
+		public Builder authority(String authority)
+		{
+			_authority = encode(authority, "@:");
+			return this;
+		}
+
+		public Builder encodedAuthority(String authority)
+		{
+			_authority = authority;
+			return this;
+		}
+
+		public Builder path(String path)
+		{
+			return encodedPath(encode(path, "/"));
+		}
+
+		public Builder encodedPath(String path)
+		{
+			_path = new StringBuilder(path != null ? path : "");
+			return this;
+		}
+
+		public Builder appendPath(String segment)
+		{
+			return appendEncodedPath(encode(segment, null));
+		}
+
+		public Builder appendEncodedPath(String segment)
+		{
+			if (_path.length() == 0 || _path.charAt(_path.length() - 1) != '/') {
+				_path.append('/');
+			}
+			_path.append(segment.startsWith("/") ? segment.substring(1) : segment);
+			return this;
+		}
+
+		public Builder encodedQuery(String query)
+		{
+			_query = (query != null ? new StringBuilder(query) : null);
+			return this;
+		}
+
+		public Builder appendQueryParameter(String key, String value)
+		{
+			if (_query == null) {
+				_query = new StringBuilder();
+			} else {
+				_query.append('&');
+			}
+			_query.append(encode(key, null)).append('=').append(encode(value, null));
+			return this;
+		}
+
+		public Builder clearQuery()
+		{
+			_query = null;
+			return this;
+		}
+
+		public Uri build()
+		{
+			String path = _path.toString();
+			if (_authority != null && !path.isEmpty() && !path.startsWith("/")) {
+				path = "/" + path;
+			}
+
+			return new HierarchicalUri(_scheme, _authority, path, (_query != null ? _query.toString() : null));
+		}
+
+		@Override
+		public String toString()
+		{
+			return build().toString();
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package android.os;
+
+/**
+ * JVM stand-in, reports the newest API level the library checks for
+ */
+public class Build
+{
+	public static class VERSION
+	{
+		public static final int SDK_INT = VERSION_CODES.R;
+	}
+
+	public static class VERSION_CODES
+	{
+		public static final int FROYO = 8;
+		public static final int GINGERBREAD = 9;
+		public static final int HONEYCOMB = 11;
+		public static final int HONEYCOMB_MR1 = 12;
+		public static final int ICE_CREAM_SANDWICH = 14;
+		public static final int JELLY_BEAN = 16;
+		public static final int KITKAT = 19;
+		public static final int LOLLIPOP = 21;
+		public static final int M = 23;
+		public static final int O = 26;
+		public static final int P = 28;
+		public static final int Q = 29;
+		public static final int R = 30;
+	}
+}
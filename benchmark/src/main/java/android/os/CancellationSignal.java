@@ -0,0 +1,57 @@
+package android.os;
+
+/**
+ * JVM stand-in
+ */
+public final class CancellationSignal
+{
+	private boolean _canceled;
+	private OnCancelListener _listener;
+
+	public interface OnCancelListener
+	{
+		void onCancel();
+	}
+
+	public boolean isCanceled()
+	{
+		synchronized (this) {
+			return _canceled;
+		}
+	}
+
+	public void throwIfCanceled()
+	{
+		if (isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
+
+	public void cancel()
+	{
+		final OnCancelListener listener;
+		synchronized (this) {
+			if (_canceled) {
+				return;
+			}
+			_canceled = true;
+			listener = _listener;
+		}
+
+		if (listener != null) {
+			listener.onCancel();
+		}
+	}
+
+	public void setOnCancelListener(OnCancelListener listener)
+	{
+		synchronized (this) {
+			_listener = listener;
+			if (!_canceled || listener == null) {
+				return;
+			}
+		}
+
+		listener.onCancel();
+	}
+}
@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * JVM stand-in
+ */
+public class OperationCanceledException extends RuntimeException
+{
+	public OperationCanceledException()
+	{
+		this(null);
+	}
+
+	public OperationCanceledException(String message)
+	{
+		super(message != null ? message : "The operation has been canceled.");
+	}
+}
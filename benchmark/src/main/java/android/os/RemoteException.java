@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * JVM stand-in
+ */
+public class RemoteException extends Exception
+{
+	public RemoteException()
+	{
+	}
+
+	public RemoteException(String message)
+	{
+		super(message);
+	}
+}
@@ -0,0 +1,57 @@
+package android.text;
+
+import java.util.Iterator;
+
+/**
+ * JVM stand-in
+ */
+public class TextUtils
+{
+	private TextUtils()
+	{
+	}
+
+	public static boolean isEmpty(CharSequence str)
+	{
+		return (str == null || str.length() == 0);
+	}
+
+	public static boolean equals(CharSequence a, CharSequence b)
+	{
+		if (a == b) {
+			return true;
+		}
+		if (a == null || b == null || a.length() != b.length()) {
+			return false;
+		}
+
+		return a.toString().equals(b.toString());
+	}
+
+	public static String join(CharSequence delimiter, Object[] tokens)
+	{
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < tokens.length; i++) {
+			if (i > 0) {
+				builder.append(delimiter);
+			}
+			builder.append(tokens[i]);
+		}
+
+		return builder.toString();
+	}
+
+	public static String join(CharSequence delimiter, Iterable tokens)
+	{
+		final StringBuilder builder = new StringBuilder();
+		final Iterator iterator = tokens.iterator();
+		if (iterator.hasNext()) {
+			builder.append(iterator.next());
+			while (iterator.hasNext()) {
+				builder.append(delimiter).append(iterator.next());
+			}
+		}
+
+		return builder.toString();
+	}
+}
@@ -0,0 +1,73 @@
+package android.util;
+
+/**
+ * JVM stand-in: verbose, debug and info messages are dropped, so they cost only
+ * the string building done by the caller, as in a release build without a log reader
+ */
+public final class Log
+{
+	public static final int VERBOSE = 2;
+	public static final int DEBUG = 3;
+	public static final int INFO = 4;
+	public static final int WARN = 5;
+	public static final int ERROR = 6;
+
+	private Log()
+	{
+	}
+
+	public static int v(String tag, String msg)
+	{
+		return 0;
+	}
+
+	public static int d(String tag, String msg)
+	{
+		return 0;
+	}
+
+	public static int i(String tag, String msg)
+	{
+		return 0;
+	}
+
+	public static int w(String tag, String msg)
+	{
+		return _print(WARN, tag, msg, null);
+	}
+
+	public static int w(String tag, Throwable tr)
+	{
+		return _print(WARN, tag, null, tr);
+	}
+
+	public static int w(String tag, String msg, Throwable tr)
+	{
+		return _print(WARN, tag, msg, tr);
+	}
+
+	public static int e(String tag, String msg)
+	{
+		return _print(ERROR, tag, msg, null);
+	}
+
+	public static int e(String tag, String msg, Throwable tr)
+	{
+		return _print(ERROR, tag, msg, tr);
+	}
+
+	public static boolean isLoggable(String tag, int level)
+	{
+		return level >= WARN;
+	}
+
+	private static int _print(int level, String tag, String msg, Throwable tr)
+	{
+		System.err.println((level == WARN ? "W/" : "E/") + tag + ": " + (msg != null ? msg : ""));
+		if (tr != null) {
+			tr.printStackTrace();
+		}
+
+		return 0;
+	}
+}
@@ -0,0 +1,170 @@
+package com.finallevel.cphm;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Provider, open helper and database file in a temporary directory, reached through
+ * the stand-in ContentResolver like an app reaches its own provider
+ */
+final class BenchmarkDatabase
+{
+	static final String AUTHORITY = "com.finallevel.cphm.benchmark";
+	static final String DATABASE_FILE = "benchmark.db";
+
+	private static final Uri BASE_CONTENT_URI = Uri.parse("content://" + AUTHORITY);
+
+	final File dir;
+	final Context context;
+	final BaseStructure structure;
+	final DatabaseProfile profile;
+	final Provider provider;
+
+	BenchmarkDatabase(BaseStructure structure, int version)
+	{
+		this(structure, version, _createDir(), null);
+	}
+
+	/**
+	 * @param profile null keeps the defaults
+	 */
+	BenchmarkDatabase(BaseStructure structure, int version, DatabaseProfile profile)
+	{
+		this(structure, version, _createDir(), profile);
+	}
+
+	/**
+	 * Opens an existing directory, to reopen a database with another version
+	 */
+	BenchmarkDatabase(BaseStructure structure, int version, File dir)
+	{
+		this(structure, version, dir, null);
+	}
+
+	private BenchmarkDatabase(BaseStructure structure, int version, File dir, DatabaseProfile profile)
+	{
+		this.dir = dir;
+		this.context = new Context(dir);
+		this.structure = structure;
+		this.profile = profile;
+		this.provider = new Provider(version);
+
+		context.getContentResolver().addProvider(AUTHORITY, provider);
+	}
+
+	/**
+	 * Tables of the 4, 16 and 32 column models, each with an index on c0
+	 */
+	static BaseStructure createStructure()
+	{
+		final BaseStructure structure = new BaseStructure();
+		for (int columns : new int[] { 4, 16, 32 }) {
+			final String table = BenchmarkModels.getTable(columns);
+			structure.addTable(table, BenchmarkModels.getModelClass(columns), BaseStructure.OnConflict.REPLACE);
+			structure.addIndex(table, false, new String[] { "c0" });
+		}
+
+		return structure;
+	}
+
+	static Uri getContentUri(String table)
+	{
+		return BASE_CONTENT_URI.buildUpon().appendPath(table).build();
+	}
+
+	static Uri getContentUri(String table, long id)
+	{
+		return BASE_CONTENT_URI.buildUpon().appendPath(table).appendEncodedPath(String.valueOf(id)).build();
+	}
+
+	SQLiteDatabase getDatabase()
+	{
+		return provider.getHelper().getWritableDatabase();
+	}
+
+	void close()
+	{
+		provider.getHelper().close();
+	}
+
+	void delete()
+	{
+		close();
+		deleteDir(dir);
+	}
+
+	static void deleteDir(File dir)
+	{
+		final File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				//noinspection ResultOfMethodCallIgnored
+				file.delete();
+			}
+		}
+		//noinspection ResultOfMethodCallIgnored
+		dir.delete();
+	}
+
+	private static File _createDir()
+	{
+		try {
+			return Files.createTempDirectory("cphm-benchmark").toFile();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	class Provider extends BaseProvider
+	{
+		private final int _version;
+
+		Provider(int version)
+		{
+			_version = version;
+		}
+
+		@Override
+		public BaseStructure getStructure()
+		{
+			return structure;
+		}
+
+		@Override
+		public SQLiteOpenHelper getOpenHelper()
+		{
+			return new OpenHelper(getContext(), _version);
+		}
+
+		SQLiteOpenHelper getHelper()
+		{
+			return _openHelper;
+		}
+	}
+
+	class OpenHelper extends BaseSQLiteOpenHelper
+	{
+		OpenHelper(Context context, int version)
+		{
+			super(context, DATABASE_FILE, null, version);
+		}
+
+		@Override
+		public BaseStructure getStructure()
+		{
+			return structure;
+		}
+
+		@Override
+		protected DatabaseProfile getDatabaseProfile()
+		{
+			return profile;
+		}
+	}
+}
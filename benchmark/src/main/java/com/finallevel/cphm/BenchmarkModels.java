@@ -0,0 +1,164 @@
+package com.finallevel.cphm;
+
+import android.content.ContentValues;
+
+/**
+ * Models of 4, 16 and 32 columns with a mix of INTEGER, REAL and TEXT fields
+ */
+final class BenchmarkModels
+{
+	private BenchmarkModels()
+	{
+	}
+
+	static Class<? extends BaseColumns> getModelClass(int columns)
+	{
+		switch (columns) {
+			case 4:
+				return Narrow.class;
+			case 16:
+				return Medium.class;
+			case 32:
+				return Wide.class;
+			default:
+				throw new IllegalArgumentException("No model with " + columns + " columns");
+		}
+	}
+
+	static String getTable(int columns)
+	{
+		return getModelClass(columns).getSimpleName().toLowerCase();
+	}
+
+	/**
+	 * Row values in projection order, as SQLite returns them for Contract.getProjection()
+	 */
+	static Object[] getRow(String[] projection, long id)
+	{
+		final Object[] row = new Object[projection.length];
+		for (int i = 0; i < projection.length; i++) {
+			row[i] = getValue(projection[i], id);
+		}
+
+		return row;
+	}
+
+	static ContentValues getContentValues(int columns, long id)
+	{
+		final ContentValues cv = new ContentValues(columns + 1);
+		if (id > 0) {
+			cv.put(BaseColumns.CN_ID, id);
+		}
+		for (int i = 0; i < columns; i++) {
+			final String column = "c" + i;
+			final Object value = getValue(column, id);
+			if (value instanceof String) {
+				cv.put(column, (String) value);
+			} else if (value instanceof Double) {
+				cv.put(column, (Double) value);
+			} else {
+				cv.put(column, (Long) value);
+			}
+		}
+
+		return cv;
+	}
+
+	private static Object getValue(String column, long id)
+	{
+		if (column.equals(BaseColumns.CN_ID)) {
+			return id;
+		} else if (column.charAt(0) == '\'') {
+			return column.substring(1, column.length() - 1); // projection sentinel literal
+		}
+
+		final int index = Integer.parseInt(column.substring(1));
+		switch (index % 8) {
+			case 0:
+			case 7:
+				return "value " + id + " of column " + index;
+			case 3:
+				return id * 0.5;
+			case 5:
+				return id & 1;
+			default:
+				return id + index;
+		}
+	}
+
+	public static class Narrow extends BaseColumns
+	{
+		public static final String TABLE = "narrow";
+
+		public long _id;
+
+		public String c0;
+		public long c1;
+		public int c2;
+		public double c3;
+	}
+
+	public static class Medium extends BaseColumns
+	{
+		public static final String TABLE = "medium";
+
+		public long _id;
+
+		public String c0;
+		public long c1;
+		public int c2;
+		public double c3;
+		public Integer c4;
+		public boolean c5;
+		public Long c6;
+		public String c7;
+		public String c8;
+		public long c9;
+		public int c10;
+		public double c11;
+		public Integer c12;
+		public boolean c13;
+		public Long c14;
+		public String c15;
+	}
+
+	public static class Wide extends BaseColumns
+	{
+		public static final String TABLE = "wide";
+
+		public long _id;
+
+		public String c0;
+		public long c1;
+		public int c2;
+		public double c3;
+		public Integer c4;
+		public boolean c5;
+		public Long c6;
+		public String c7;
+		public String c8;
+		public long c9;
+		public int c10;
+		public double c11;
+		public Integer c12;
+		public boolean c13;
+		public Long c14;
+		public String c15;
+		public String c16;
+		public long c17;
+		public int c18;
+		public double c19;
+		public Integer c20;
+		public boolean c21;
+		public Long c22;
+		public String c23;
+		public String c24;
+		public long c25;
+		public int c26;
+		public double c27;
+		public Integer c28;
+		public boolean c29;
+		public Long c30;
+		public String c31;
+	}
+}
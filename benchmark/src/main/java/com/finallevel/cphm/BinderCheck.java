@@ -0,0 +1,190 @@
+package com.finallevel.cphm;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.util.Arrays;
+
+/**
+ * Fails when a generated binder reads or writes a model differently from the reflection path.
+ * Every supported field type is written through one Contract, read back through both, and
+ * the models and their ContentValues are compared. Run by "gradle binderCheck", part of "gradle check".
+ */
+public final class BinderCheck
+{
+	private BinderCheck()
+	{
+	}
+
+	public static void main(String[] args)
+		throws Exception
+	{
+		final Contract binder = new Contract(AllTypes.class, true);
+		final Contract reflection = new Contract(AllTypes.class, false);
+		if (!binder.hasBinder()) {
+			throw new IllegalStateException("Binder of " + AllTypes.class.getName() + " is not generated or does not match its fields");
+		}
+
+		final BaseStructure structure = new BaseStructure();
+		structure.addTable(AllTypes.TABLE, AllTypes.class, BaseStructure.OnConflict.REPLACE);
+		final BenchmarkDatabase database = new BenchmarkDatabase(structure, 1);
+		final Uri contentUri = BenchmarkDatabase.getContentUri(AllTypes.TABLE);
+
+		int failures = 0;
+		try {
+			for (AllTypes model : new AllTypes[] { AllTypes.createFilled(1), AllTypes.createEmpty(2) }) {
+				database.context.getContentResolver().insert(contentUri, reflection.toContentValues(model, null, null));
+
+				final Uri uri = BenchmarkDatabase.getContentUri(AllTypes.TABLE, model._id);
+				final AllTypes viaBinder = _read(binder, uri, database);
+				final AllTypes viaReflection = _read(reflection, uri, database);
+
+				failures += _compare("binder read of " + uri, viaBinder, model);
+				failures += _compare("reflection read of " + uri, viaReflection, model);
+				failures += _compare(
+					"ContentValues of " + uri,
+					binder.toContentValues(viaBinder, null, null),
+					reflection.toContentValues(viaReflection, null, null)
+				);
+
+				if (binder.getModelId(viaBinder) != model._id) {
+					System.out.println("binder id of " + uri + ": " + binder.getModelId(viaBinder));
+					failures++;
+				}
+				binder.setModelId(viaBinder, model._id + 100);
+				if (viaBinder._id != model._id + 100) {
+					System.out.println("binder set id of " + uri + ": " + viaBinder._id);
+					failures++;
+				}
+			}
+		} finally {
+			database.delete();
+		}
+
+		if (failures > 0) {
+			throw new IllegalStateException(failures + " binder mismatches");
+		}
+		System.out.println("Binder matches reflection for " + AllTypes.class.getName());
+	}
+
+	private static AllTypes _read(Contract contract, Uri uri, BenchmarkDatabase database)
+		throws Exception
+	{
+		final Cursor cursor = database.context.getContentResolver().query(uri, contract.getProjection(), null, null, null);
+		try {
+			if (!cursor.moveToFirst()) {
+				throw new IllegalStateException("No row " + uri);
+			}
+
+			final AllTypes result = (AllTypes) contract.newInstance();
+			contract.populateModel(result, cursor, 0);
+
+			return result;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private static int _compare(String what, AllTypes actual, AllTypes expected)
+		throws IllegalAccessException
+	{
+		int failures = 0;
+		for (java.lang.reflect.Field field : AllTypes.class.getFields()) {
+			if (java.lang.reflect.Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+
+			final Object a = field.get(actual);
+			final Object e = field.get(expected);
+			if (!Arrays.deepEquals(new Object[] { a }, new Object[] { e })) {
+				System.out.println(what + ", " + field.getName() + ": " + _toString(a) + " instead of " + _toString(e));
+				failures++;
+			}
+		}
+
+		return failures;
+	}
+
+	private static int _compare(String what, ContentValues actual, ContentValues expected)
+	{
+		int failures = 0;
+		for (String key : expected.keySet()) {
+			final Object a = actual.get(key);
+			final Object e = expected.get(key);
+			if (!actual.containsKey(key) || !Arrays.deepEquals(new Object[] { a }, new Object[] { e })) {
+				System.out.println(what + ", " + key + ": " + _toString(a) + " instead of " + _toString(e));
+				failures++;
+			}
+		}
+		if (actual.size() != expected.size()) {
+			System.out.println(what + ": " + actual.keySet() + " instead of " + expected.keySet());
+			failures++;
+		}
+
+		return failures;
+	}
+
+	private static String _toString(Object value)
+	{
+		return (value instanceof byte[] ? Arrays.toString((byte[]) value) : String.valueOf(value));
+	}
+
+	/**
+	 * Package private, as models of an application usually are: the processor still generates its binder
+	 */
+	static class AllTypes extends BaseColumns
+	{
+		static final String TABLE = "all_types";
+
+		public long _id;
+
+		public int i;
+		public Integer iObj;
+		public long l;
+		public Long lObj;
+		public float f;
+		public Float fObj;
+		public double d;
+		public Double dObj;
+		public String s;
+		public byte[] blob;
+		public byte b;
+		public Byte bObj;
+		public boolean z;
+		public Boolean zObj;
+
+		static AllTypes createFilled(long id)
+		{
+			final AllTypes model = new AllTypes();
+			model._id = id;
+			model.i = -7;
+			model.iObj = Integer.MAX_VALUE;
+			model.l = Long.MIN_VALUE;
+			model.lObj = 1L << 40;
+			model.f = 1.5f;
+			model.fObj = -0.25f;
+			model.d = Math.PI;
+			model.dObj = 1e300;
+			model.s = "text \u00e9\u4e2d";
+			model.blob = new byte[] { 0, 1, -1, 127, -128 };
+			model.b = -3;
+			model.bObj = Byte.MAX_VALUE;
+			model.z = true;
+			model.zObj = Boolean.FALSE;
+
+			return model;
+		}
+
+		/**
+		 * Primitives at 0, objects null
+		 */
+		static AllTypes createEmpty(long id)
+		{
+			final AllTypes model = new AllTypes();
+			model._id = id;
+
+			return model;
+		}
+	}
+}
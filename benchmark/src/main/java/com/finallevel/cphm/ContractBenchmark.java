@@ -0,0 +1,81 @@
+package com.finallevel.cphm;
+
+import android.database.MatrixCursor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Model <=> row conversion without SQLite: generated binders against reflection
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContractBenchmark
+{
+	@Param({ "4", "16", "32" })
+	public int columns;
+
+	@Param({ "1", "100", "1000" })
+	public int rows;
+
+	@Param({ "true", "false" })
+	public boolean binder;
+
+	private Contract _contract;
+	private MatrixCursor _cursor;
+	private Object[] _models;
+
+	@Setup
+	public void setUp() throws Exception
+	{
+		_contract = new Contract(BenchmarkModels.getModelClass(columns), binder);
+		if (_contract.hasBinder() != binder) {
+			throw new IllegalStateException("Binder of " + columns + " column model is not generated");
+		}
+
+		final String[] projection = _contract.getProjection();
+		_cursor = new MatrixCursor(projection, rows);
+		_models = new Object[rows];
+		for (int i = 0; i < rows; i++) {
+			_cursor.addRow(BenchmarkModels.getRow(projection, i + 1));
+		}
+		for (int i = 0; _cursor.moveToNext(); i++) {
+			_models[i] = _contract.newInstance();
+			_contract.populateModel(_models[i], _cursor, 0);
+		}
+	}
+
+	@Benchmark
+	public void populateModel(Blackhole blackhole) throws Exception
+	{
+		_cursor.moveToPosition(-1);
+		while (_cursor.moveToNext()) {
+			final Object model = _contract.newInstance();
+			_contract.populateModel(model, _cursor, 0);
+			blackhole.consume(model);
+		}
+	}
+
+	@Benchmark
+	public void toContentValues(Blackhole blackhole) throws Exception
+	{
+		for (Object model : _models) {
+			blackhole.consume(_contract.toContentValues(model, null, null));
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.finallevel.cphm;
+
+import android.content.ContentValues;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a version 1 database as version 2: BaseSQLiteOpenHelper.onUpgrade() for an unchanged
+ * schema (skipped by fingerprint) and for a schema with one more index on every table
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class MigrationBenchmark
+{
+	private static final int ROWS = 100;
+
+	@Param({ "10", "80" })
+	public int tables;
+
+	@Param({ "false", "true" })
+	public boolean changed;
+
+	private File _dir;
+
+	@Setup(Level.Invocation)
+	public void setUp()
+	{
+		final BenchmarkDatabase database = new BenchmarkDatabase(_createStructure(false), 1);
+		final ContentValues[] values = new ContentValues[ROWS];
+		for (int i = 0; i < ROWS; i++) {
+			values[i] = BenchmarkModels.getContentValues(16, i + 1);
+		}
+		for (int i = 0; i < tables; i++) {
+			database.context.getContentResolver().bulkInsert(BenchmarkDatabase.getContentUri("t" + i), values);
+		}
+		database.close();
+
+		_dir = database.dir;
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown()
+	{
+		BenchmarkDatabase.deleteDir(_dir);
+	}
+
+	@Benchmark
+	public Object upgrade()
+	{
+		final BenchmarkDatabase database = new BenchmarkDatabase(_createStructure(changed), 2, _dir);
+		try {
+			return database.getDatabase();
+		} finally {
+			database.close();
+		}
+	}
+
+	private BaseStructure _createStructure(boolean withIndex)
+	{
+		final BaseStructure structure = new BaseStructure();
+		for (int i = 0; i < tables; i++) {
+			final String table = "t" + i;
+			structure.addTable(table, BenchmarkModels.Medium.class, BaseStructure.OnConflict.REPLACE);
+			structure.addIndex(table, false, new String[] { "c0" });
+			if (withIndex) {
+				structure.addIndex(table, false, new String[] { "c1", "c2" });
+			}
+		}
+
+		return structure;
+	}
+}
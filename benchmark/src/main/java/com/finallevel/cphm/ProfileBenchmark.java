@@ -0,0 +1,136 @@
+package com.finallevel.cphm;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commits and lookups under each DatabaseProfile: alone, then readWrite runs three readers
+ * next to one writer and reports the throughput of each side. Like Android, the stand-in
+ * SQLiteDatabase reads on a pool of connections only with WAL; otherwise readers wait for the writer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileBenchmark
+{
+	private static final int ROWS = 10000;
+	private static final int KEYS = 1024;
+
+	@Param({ "default", "wal", "walNormal" })
+	public String profile;
+
+	private BenchmarkDatabase _database;
+	private ContentResolver _resolver;
+	private Uri _contentUri;
+	private Uri[] _itemUris;
+	private ContentValues _insert;
+	private int _next;
+
+	@Setup
+	public void setUp()
+	{
+		_database = new BenchmarkDatabase(BenchmarkDatabase.createStructure(), 1, _createProfile(profile));
+		_resolver = _database.context.getContentResolver();
+		_contentUri = BenchmarkDatabase.getContentUri(BenchmarkModels.Narrow.TABLE);
+
+		final ContentValues[] values = new ContentValues[ROWS];
+		for (int i = 0; i < ROWS; i++) {
+			values[i] = BenchmarkModels.getContentValues(4, i + 1);
+		}
+		_resolver.bulkInsert(_contentUri, values);
+
+		final Random random = new Random(42);
+		_itemUris = new Uri[KEYS];
+		for (int i = 0; i < KEYS; i++) {
+			_itemUris[i] = BenchmarkDatabase.getContentUri(BenchmarkModels.Narrow.TABLE, 1 + random.nextInt(ROWS));
+		}
+		_insert = BenchmarkModels.getContentValues(4, 0);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		_database.delete();
+	}
+
+	/**
+	 * One transaction per row, where journal mode and synchronous matter most
+	 */
+	@Benchmark
+	public Uri insert()
+	{
+		return _resolver.insert(_contentUri, _insert);
+	}
+
+	@Benchmark
+	public Object findFirst()
+	{
+		return _database.structure.findFirst(_itemUris[_nextKey()], BenchmarkModels.Narrow.class, _database.context);
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(3)
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Object reader()
+	{
+		final Uri uri = _itemUris[ThreadLocalRandom.current().nextInt(KEYS)];
+
+		return _database.structure.findFirst(uri, BenchmarkModels.Narrow.class, _database.context);
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(1)
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Uri writer()
+	{
+		return _resolver.insert(_contentUri, _insert);
+	}
+
+	private int _nextKey()
+	{
+		return (_next = (_next + 1) & (KEYS - 1));
+	}
+
+	private static DatabaseProfile _createProfile(String name)
+	{
+		switch (name) {
+			case "default":
+				return null;
+			case "wal":
+				return new DatabaseProfile()
+					.setWriteAheadLogging(true);
+			case "walNormal":
+				return new DatabaseProfile()
+					.setWriteAheadLogging(true)
+					.setSynchronous(DatabaseProfile.Synchronous.NORMAL);
+			default:
+				throw new IllegalArgumentException("Unknown profile " + name);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.finallevel.cphm;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips through the provider and SQLite: lookups by id, upserts and bulk inserts
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProviderBenchmark
+{
+	private static final int KEYS = 1024;
+	private static final int BULK_ROWS = 100;
+
+	@Param({ "1000", "10000" })
+	public int rows;
+
+	@Param({ "4", "16", "32" })
+	public int columns;
+
+	private BenchmarkDatabase _database;
+	private ContentResolver _resolver;
+	private Class<? extends BaseColumns> _class;
+	private Uri _contentUri;
+	private Uri _upsertUri;
+	private Uri[] _itemUris;
+	private ContentValues[] _upserts;
+	private ContentValues[] _bulk;
+	private int _next;
+
+	@Setup
+	public void setUp()
+	{
+		_database = new BenchmarkDatabase(BenchmarkDatabase.createStructure(), 1);
+		_resolver = _database.context.getContentResolver();
+		_class = BenchmarkModels.getModelClass(columns);
+
+		final String table = BenchmarkModels.getTable(columns);
+		_contentUri = BenchmarkDatabase.getContentUri(table);
+		_upsertUri = BaseStructure.getUpsertUri(_contentUri, null, null);
+
+		final ContentValues[] values = new ContentValues[rows];
+		for (int i = 0; i < rows; i++) {
+			values[i] = BenchmarkModels.getContentValues(columns, i + 1);
+		}
+		_resolver.bulkInsert(_contentUri, values);
+
+		final Random random = new Random(42);
+		_itemUris = new Uri[KEYS];
+		_upserts = new ContentValues[KEYS];
+		for (int i = 0; i < KEYS; i++) {
+			final long id = 1 + random.nextInt(rows);
+			_itemUris[i] = BenchmarkDatabase.getContentUri(table, id);
+			_upserts[i] = BenchmarkModels.getContentValues(columns, id);
+		}
+
+		_bulk = new ContentValues[BULK_ROWS];
+		for (int i = 0; i < BULK_ROWS; i++) {
+			_bulk[i] = BenchmarkModels.getContentValues(columns, 0);
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		_database.delete();
+	}
+
+	@Benchmark
+	public Object findFirst()
+	{
+		return _database.structure.findFirst(_itemUris[_nextKey()], _class, _database.context);
+	}
+
+	@Benchmark
+	public boolean insertOrUpdate()
+	{
+		return _database.structure.insertOrUpdate(_resolver, _contentUri, _upserts[_nextKey()]);
+	}
+
+	/**
+	 * New rows on every invocation, so the table grows through the measurement
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int bulkInsert()
+	{
+		return _resolver.bulkInsert(_contentUri, _bulk);
+	}
+
+	private int _nextKey()
+	{
+		return (_next = (_next + 1) & (KEYS - 1));
+	}
+}
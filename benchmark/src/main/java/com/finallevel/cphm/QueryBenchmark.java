@@ -0,0 +1,146 @@
+package com.finallevel.cphm;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query builder against the hand written selection it replaces: building the selection, arguments
+ * and uri alone, then the whole round trip through the provider
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark
+{
+	private static final int ROWS = 10000;
+	private static final int KEYS = 1024;
+	private static final int LIMIT = 10;
+
+	private BenchmarkDatabase _database;
+	private Uri _contentUri;
+	private String[] _projection;
+	private String[] _names;
+	private long[] _minimums;
+	private int _next;
+
+	@Setup
+	public void setUp()
+	{
+		_database = new BenchmarkDatabase(BenchmarkDatabase.createStructure(), 1);
+		_contentUri = BenchmarkDatabase.getContentUri(BenchmarkModels.Narrow.TABLE);
+		_projection = _database.structure.getProjection(BenchmarkModels.Narrow.class);
+
+		final ContentValues[] values = new ContentValues[ROWS];
+		for (int i = 0; i < ROWS; i++) {
+			values[i] = BenchmarkModels.getContentValues(4, i + 1);
+		}
+		_database.context.getContentResolver().bulkInsert(_contentUri, values);
+
+		_names = new String[KEYS];
+		_minimums = new long[KEYS];
+		for (int i = 0; i < KEYS; i++) {
+			final ContentValues cv = values[(i * 7919) % ROWS];
+			_names[i] = cv.getAsString("c0");
+			_minimums[i] = cv.getAsLong("c1") - 1;
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		_database.delete();
+	}
+
+	@Benchmark
+	public void build(Blackhole blackhole)
+	{
+		final int key = _nextKey();
+		final Query<BenchmarkModels.Narrow> query = _database.structure.query(BenchmarkModels.Narrow.class)
+			.eq("c0", _names[key])
+			.gt("c1", _minimums[key])
+			.orderBy(BaseColumns.CN_ID, false)
+			.limit(LIMIT);
+
+		blackhole.consume(query.getSelection());
+		blackhole.consume(query.getSelectionArgs());
+		blackhole.consume(query.getSortOrder());
+		blackhole.consume(query.getUri(_contentUri));
+	}
+
+	@Benchmark
+	public void buildHandWritten(Blackhole blackhole)
+	{
+		final int key = _nextKey();
+
+		blackhole.consume("c0 = ? AND c1 > ?");
+		blackhole.consume(new String[] { _names[key], Long.toString(_minimums[key]) });
+		blackhole.consume(BaseColumns.CN_ID + " ASC");
+		blackhole.consume(
+			_contentUri.buildUpon().appendQueryParameter(BaseProvider.PARAM_LIMIT, Integer.toString(LIMIT)).build()
+		);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<BenchmarkModels.Narrow> find()
+	{
+		final int key = _nextKey();
+
+		return _database.structure.query(BenchmarkModels.Narrow.class)
+			.eq("c0", _names[key])
+			.gt("c1", _minimums[key])
+			.orderBy(BaseColumns.CN_ID, false)
+			.limit(LIMIT)
+			.find(_contentUri, _database.context);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<BenchmarkModels.Narrow> findHandWritten()
+	{
+		final int key = _nextKey();
+		final Cursor cursor = _database.context.getContentResolver().query(
+			_contentUri.buildUpon().appendQueryParameter(BaseProvider.PARAM_LIMIT, Integer.toString(LIMIT)).build(),
+			_projection,
+			"c0 = ? AND c1 > ?",
+			new String[] { _names[key], Long.toString(_minimums[key]) },
+			BaseColumns.CN_ID + " ASC"
+		);
+		try {
+			final List<BenchmarkModels.Narrow> result = new ArrayList<>(cursor.getCount());
+			final ModelIterator<BenchmarkModels.Narrow> iterator = _database.structure.iterate(cursor, BenchmarkModels.Narrow.class);
+			while (iterator.hasNext()) {
+				result.add(iterator.next());
+			}
+
+			return result;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private int _nextKey()
+	{
+		return (_next = (_next + 1) & (KEYS - 1));
+	}
+}
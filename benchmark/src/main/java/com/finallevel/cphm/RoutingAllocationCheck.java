@@ -0,0 +1,78 @@
+package com.finallevel.cphm;
+
+import android.net.Uri;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Fails when resolving known uris allocates: RouteTable lookups must stay garbage free.
+ * Run by "gradle routingAllocationCheck", part of "gradle check".
+ */
+public final class RoutingAllocationCheck
+{
+	private static final int WARMUP_CALLS = 200000;
+	private static final int MEASURED_CALLS = 1000000;
+	/** Bytes per lookup tolerated for the measurement itself */
+	private static final double MAX_BYTES_PER_CALL = 0.01;
+
+	private RoutingAllocationCheck()
+	{
+	}
+
+	public static void main(String[] args)
+	{
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.out.println("Thread allocation counters are not supported by this JVM, skipped");
+			return;
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		final BenchmarkDatabase database = new BenchmarkDatabase(BenchmarkDatabase.createStructure(), 1);
+		final RouteTable routes = new RouteTable(database.structure);
+		final Uri[] uris = {
+			BenchmarkDatabase.getContentUri("medium"),
+			BenchmarkDatabase.getContentUri("medium", 12),
+			BenchmarkDatabase.getContentUri("medium,narrow"),
+		};
+
+		boolean failed = false;
+		try {
+			for (Uri uri : uris) {
+				_lookup(routes, uri, WARMUP_CALLS);
+
+				final long threadId = Thread.currentThread().getId();
+				final long before = threads.getThreadAllocatedBytes(threadId);
+				final long ids = _lookup(routes, uri, MEASURED_CALLS);
+				final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+				final double perCall = (double) allocated / MEASURED_CALLS;
+				System.out.println(uri + ": " + allocated + " bytes in " + MEASURED_CALLS + " lookups (" + ids + ")");
+				if (perCall > MAX_BYTES_PER_CALL) {
+					System.out.println("  allocates " + perCall + " bytes per lookup");
+					failed = true;
+				}
+			}
+		} finally {
+			database.delete();
+		}
+
+		if (failed) {
+			throw new IllegalStateException("Route lookups allocate");
+		}
+	}
+
+	/**
+	 * @return checksum of the results, so the lookups can not be removed
+	 */
+	private static long _lookup(RouteTable routes, Uri uri, int calls)
+	{
+		long sum = 0;
+		for (int i = 0; i < calls; i++) {
+			final RouteTable.Route route = routes.getRoute(uri);
+			sum += route.tables.length + (RouteTable.getId(uri) != RouteTable.NO_ID ? 1 : 0);
+		}
+
+		return sum;
+	}
+}
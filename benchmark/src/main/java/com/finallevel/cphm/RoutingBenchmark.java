@@ -0,0 +1,70 @@
+package com.finallevel.cphm;
+
+import android.net.Uri;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BaseProvider.getType(): uri => route resolution shared by all provider calls.
+ * RouteTable lookups must not allocate, RoutingAllocationCheck enforces it in "gradle check",
+ * or look at gc.alloc.rate.norm with the gc profiler:
+ * <pre>
+ * gradle jmh -Pjmh.args="RoutingBenchmark -prof gc"
+ * </pre>
+ * It stays at 0 B/op for dir, item and join uris. The uri is reused, so parsing
+ * its path segments, done once per uri, is not part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark
+{
+	@Param({ "dir", "item", "join" })
+	public String uri;
+
+	private BenchmarkDatabase _database;
+	private Uri _uri;
+
+	@Setup
+	public void setUp()
+	{
+		_database = new BenchmarkDatabase(BenchmarkDatabase.createStructure(), 1);
+		switch (uri) {
+			case "dir":
+				_uri = BenchmarkDatabase.getContentUri("medium");
+				break;
+			case "item":
+				_uri = BenchmarkDatabase.getContentUri("medium", 12);
+				break;
+			default:
+				_uri = BenchmarkDatabase.getContentUri("medium,narrow");
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		_database.delete();
+	}
+
+	@Benchmark
+	public String getType()
+	{
+		return _database.provider.getType(_uri);
+	}
+}
@@ -0,0 +1,258 @@
+package com.finallevel.cphm.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates {@code <ModelClass>$$CphmBinder} for every concrete subclass of BaseColumns,
+ * so Contract can read and write model fields without java.lang.reflect.
+ *
+ * Field rules mirror com.finallevel.cphm.Field: only public, non static and non final
+ * members of the supported types become columns.
+ */
+@SupportedAnnotationTypes("*")
+public class BinderProcessor extends AbstractProcessor
+{
+	private static final String BASE_COLUMNS = "com.finallevel.cphm.BaseColumns";
+	private static final String SUFFIX = "$$CphmBinder";
+	private static final String CN_ID = "_id";
+
+	// type => { read from cursor, value from id, id from value }
+	private static final Map<String, String[]> TYPES = new HashMap<>();
+
+	static {
+		TYPES.put("int", new String[] {
+			"cursor.getInt(position)", "(int) id", "(long) {f}"
+		});
+		TYPES.put("java.lang.String", new String[] {
+			"cursor.isNull(position) ? null : cursor.getString(position)", "String.valueOf(id)", "Long.parseLong({f})"
+		});
+		TYPES.put("long", new String[] {
+			"cursor.getLong(position)", "id", "{f}"
+		});
+		TYPES.put("java.lang.Integer", new String[] {
+			"cursor.isNull(position) ? null : Integer.valueOf(cursor.getInt(position))", "Integer.valueOf((int) id)", "{f}.longValue()"
+		});
+		TYPES.put("java.lang.Long", new String[] {
+			"cursor.isNull(position) ? null : Long.valueOf(cursor.getLong(position))", "Long.valueOf(id)", "{f}.longValue()"
+		});
+		TYPES.put("byte[]", new String[] {
+			"cursor.isNull(position) ? null : cursor.getBlob(position)", "null", "java.nio.ByteBuffer.wrap({f}).getLong()"
+		});
+		TYPES.put("byte", new String[] {
+			"(byte) cursor.getInt(position)", "(byte) id", "(long) {f}"
+		});
+		TYPES.put("float", new String[] {
+			"cursor.getFloat(position)", "(float) id", "(long) {f}"
+		});
+		TYPES.put("double", new String[] {
+			"cursor.getDouble(position)", "(double) id", "(long) {f}"
+		});
+		TYPES.put("java.lang.Byte", new String[] {
+			"cursor.isNull(position) ? null : Byte.valueOf((byte) cursor.getInt(position))", "Byte.valueOf((byte) id)", "{f}.longValue()"
+		});
+		TYPES.put("java.lang.Float", new String[] {
+			"cursor.isNull(position) ? null : Float.valueOf(cursor.getFloat(position))", "Float.valueOf((float) id)", "{f}.longValue()"
+		});
+		TYPES.put("java.lang.Double", new String[] {
+			"cursor.isNull(position) ? null : Double.valueOf(cursor.getDouble(position))", "Double.valueOf((double) id)", "{f}.longValue()"
+		});
+		TYPES.put("boolean", new String[] {
+			"cursor.getInt(position) != 0", "id != 0", "({f} ? 1L : 0L)"
+		});
+		TYPES.put("java.lang.Boolean", new String[] {
+			"cursor.isNull(position) ? null : Boolean.valueOf(cursor.getInt(position) != 0)", "Boolean.valueOf(id != 0)", "({f} ? 1L : 0L)"
+		});
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion()
+	{
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+	{
+		final TypeElement baseColumns = processingEnv.getElementUtils().getTypeElement(BASE_COLUMNS);
+		if (baseColumns == null) {
+			return false;
+		}
+
+		final List<TypeElement> models = new ArrayList<>();
+		for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+			_collectModels(type, baseColumns.asType(), models);
+		}
+
+		for (TypeElement model : models) {
+			try {
+				_generate(model);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.toString(), model);
+			}
+		}
+
+		return false;
+	}
+
+	private void _collectModels(TypeElement type, TypeMirror baseColumns, List<TypeElement> models)
+	{
+		if (
+			type.getKind() == ElementKind.CLASS
+				&& !type.getModifiers().contains(Modifier.ABSTRACT)
+				&& !type.getModifiers().contains(Modifier.PRIVATE)
+				&& (type.getNestingKind().isNested() ? type.getModifiers().contains(Modifier.STATIC) : true)
+				&& !type.getQualifiedName().contentEquals(BASE_COLUMNS)
+				&& processingEnv.getTypeUtils().isSubtype(type.asType(), baseColumns)
+				&& _hasDefaultConstructor(type)
+			) {
+			models.add(type);
+		}
+
+		for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+			_collectModels(nested, baseColumns, models);
+		}
+	}
+
+	private static boolean _hasDefaultConstructor(TypeElement type)
+	{
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private List<VariableElement> _getFields(TypeElement type)
+	{
+		final List<VariableElement> result = new ArrayList<>();
+		for (Element member : processingEnv.getElementUtils().getAllMembers(type)) {
+			if (member.getKind() != ElementKind.FIELD) {
+				continue;
+			}
+
+			final Set<Modifier> modifiers = member.getModifiers();
+			if (
+				!modifiers.contains(Modifier.PUBLIC)
+					|| modifiers.contains(Modifier.STATIC)
+					|| modifiers.contains(Modifier.FINAL)
+				) {
+				continue;
+			}
+
+			if (TYPES.containsKey(member.asType().toString())) {
+				result.add((VariableElement) member);
+			}
+		}
+
+		return result;
+	}
+
+	private void _generate(TypeElement model)
+		throws IOException
+	{
+		final List<VariableElement> fields = _getFields(model);
+
+		VariableElement idField = null;
+		for (VariableElement field : fields) {
+			if (field.getSimpleName().contentEquals(CN_ID)) {
+				idField = field;
+			}
+		}
+		if (idField == null) {
+			return;
+		}
+
+		final PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(model);
+		final String packageName = packageElement.getQualifiedName().toString();
+		final String binaryName = processingEnv.getElementUtils().getBinaryName(model).toString();
+		final String binderName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+		final String modelName = model.getQualifiedName().toString();
+
+		final StringBuilder b = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			b.append("package ").append(packageName).append(";\n\n");
+		}
+		b.append("import android.content.ContentValues;\n");
+		b.append("import android.database.Cursor;\n");
+		b.append("import com.finallevel.cphm.ModelBinder;\n\n");
+		b.append("/** Generated by ").append(BinderProcessor.class.getName()).append(", do not edit. */\n");
+		b.append("public final class ").append(binderName).append(" implements ModelBinder<").append(modelName).append(">\n{\n");
+
+		b.append("\tprivate static final String[] COLUMNS = {\n");
+		for (VariableElement field : fields) {
+			b.append("\t\t\"").append(field.getSimpleName()).append("\",\n");
+		}
+		b.append("\t};\n\n");
+
+		b.append("\t@Override\n\tpublic String[] getColumns()\n\t{\n\t\treturn COLUMNS;\n\t}\n\n");
+
+		b.append("\t@Override\n\tpublic ").append(modelName).append(" newInstance()\n\t{\n");
+		b.append("\t\treturn new ").append(modelName).append("();\n\t}\n\n");
+
+		b.append("\t@Override\n\tpublic void set(").append(modelName).append(" model, int column, Cursor cursor, int position)\n\t{\n");
+		b.append("\t\tswitch (column) {\n");
+		for (int i = 0; i < fields.size(); i++) {
+			final VariableElement field = fields.get(i);
+			b.append("\t\t\tcase ").append(i).append(":\n");
+			b.append("\t\t\t\tmodel.").append(field.getSimpleName()).append(" = ")
+				.append(TYPES.get(field.asType().toString())[0]).append(";\n");
+			b.append("\t\t\t\tbreak;\n");
+		}
+		b.append("\t\t\tdefault:\n\t\t\t\tthrow new IllegalArgumentException(\"Unknown column: \" + column);\n");
+		b.append("\t\t}\n\t}\n\n");
+
+		b.append("\t@Override\n\tpublic void getContentValue(").append(modelName).append(" model, int column, ContentValues contentValues)\n\t{\n");
+		b.append("\t\tswitch (column) {\n");
+		for (int i = 0; i < fields.size(); i++) {
+			final VariableElement field = fields.get(i);
+			b.append("\t\t\tcase ").append(i).append(":\n");
+			b.append("\t\t\t\tcontentValues.put(\"").append(field.getSimpleName()).append("\", model.")
+				.append(field.getSimpleName()).append(");\n");
+			b.append("\t\t\t\tbreak;\n");
+		}
+		b.append("\t\t\tdefault:\n\t\t\t\tthrow new IllegalArgumentException(\"Unknown column: \" + column);\n");
+		b.append("\t\t}\n\t}\n\n");
+
+		final String[] idType = TYPES.get(idField.asType().toString());
+		b.append("\t@Override\n\tpublic long getId(").append(modelName).append(" model)\n\t{\n");
+		b.append("\t\treturn ").append(idType[2].replace("{f}", "model." + CN_ID)).append(";\n\t}\n\n");
+
+		b.append("\t@Override\n\tpublic void setId(").append(modelName).append(" model, long id)\n\t{\n");
+		b.append("\t\tmodel.").append(CN_ID).append(" = ").append(idType[1]).append(";\n\t}\n");
+
+		b.append("}\n");
+
+		final String fileName = (packageName.isEmpty() ? "" : packageName + ".") + binderName;
+		final JavaFileObject file = processingEnv.getFiler().createSourceFile(fileName, model);
+		final Writer writer = file.openWriter();
+		//noinspection TryFinallyCanBeTryWithResources
+		try {
+			writer.write(b.toString());
+		} finally {
+			writer.close();
+		}
+	}
+}
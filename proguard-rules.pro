@@ -21,10 +21,19 @@
 #}
 
 # Keep field names, because they use as column names in sqlite tables
--keepclassmembers public class * extends com.finallevel.cphm.BaseColumns {
+# Models may be package private or nested, so no access modifier on the class
+-keepclassmembers class * extends com.finallevel.cphm.BaseColumns {
 	public !static !final <fields>;
 }
 
+# Generated binders are found by model class name
+-keepnames class * extends com.finallevel.cphm.BaseColumns
+-keepnames class **$$CphmBinder
+-keepnames class * implements com.finallevel.cphm.ModelBinder
+-keepclassmembers class * implements com.finallevel.cphm.ModelBinder {
+	public <init>();
+}
+
 # Clear loggining
 # TODO: uncomment before release
 #-assumenosideeffects class android.util.Log {
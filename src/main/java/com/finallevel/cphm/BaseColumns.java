@@ -7,4 +7,10 @@ public class BaseColumns
 	public static final int CI_ID = 0;
 
 //	public long _id;
+
+	/**
+	 * Set when the model was read without some of its @Lazy columns: toContentValues() then
+	 * leaves its null lazy fields out instead of writing NULL
+	 */
+	transient boolean lazyFieldsSkipped;
 }
@@ -2,27 +2,63 @@ package com.finallevel.cphm;
 
 import android.content.*;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
 import android.text.TextUtils;
 import android.util.Log;
-import android.util.Pair;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 public abstract class BaseProvider extends ContentProvider
 {
 	public static final String PARAM_ON_CONFLICT = "_ON_CONFLICT";
 	public static final String PARAM_JOIN_ON = "_JOIN_ON";
 	public static final String PARAM_LIMIT = "_LIMIT";
+	public static final String PARAM_UPSERT = "_UPSERT";
+	public static final String PARAM_EXCLUDE_FROM_UPDATE = "_EXCLUDE_FROM_UPDATE";
+	public static final String PARAM_UPDATE_ONLY = "_UPDATE_ONLY";
 
 	private static final String LOG_TAG = "BaseProvider";
 
+	private static final String[] CONFLICT_VALUES = {
+		"", " OR ROLLBACK", " OR ABORT", " OR FAIL", " OR IGNORE", " OR REPLACE"
+	};
+
+	private static final String WHERE_ID = BaseColumns.CN_ID + " = ?";
+	private static final int STATEMENT_CACHE_SIZE = 32;
+	private static final int QUERY_CACHE_MAX_ROWS = 1000;
+
+	private static final int SQLITE_VERSION_UPSERT = 3024000;
+	private static final int SQLITE_VERSION_UPSERT_MULTIPLE = 3035000;
+
 	protected BaseStructure _structure;
 	protected SQLiteOpenHelper _openHelper;
 
+	private volatile int _sqliteVersion;
+	private StatementCache _statementCache;
+	private RouteTable _routes;
+	private QueryCache _queryCache;
+	private ChangeNotifier _notifier;
+	private FutureTask<Void> _prewarm;
+	private ProviderMetrics _metrics;
+	private QueryPlanRecorder _planRecorder;
+	private IndexAdvisor _indexAdvisor;
+
 	public abstract BaseStructure getStructure();
 
 	public abstract SQLiteOpenHelper getOpenHelper();
@@ -34,68 +70,399 @@ public abstract class BaseProvider extends ContentProvider
 
 		_openHelper = getOpenHelper();
 
+		_statementCache = new StatementCache(getStatementCacheSize());
+		_routes = new RouteTable(_structure);
+
+		_notifier = new ChangeNotifier(getContext(), getNotificationDebounceMillis());
+		_metrics = getMetrics();
+		_planRecorder = getQueryPlanRecorder();
+		_indexAdvisor = getIndexAdvisor();
+
+		final long queryCacheBytes = getQueryCacheBytes();
+		if (queryCacheBytes > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			_queryCache = new QueryCache(queryCacheBytes, getQueryCacheMaxRows());
+		}
+		if (_openHelper instanceof BaseSQLiteOpenHelper) {
+			((BaseSQLiteOpenHelper) _openHelper).setWriteListener(new BaseSQLiteOpenHelper.WriteListener()
+			{
+				@Override
+				public void onTableWritten(String tableName)
+				{
+					_onWrite(tableName, RouteTable.NO_ID);
+				}
+			});
+		}
+
+		if (isPrewarmEnabled()) {
+			_prewarm = new FutureTask<>(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					_prewarm();
+				}
+			}, null);
+			getPrewarmExecutor().execute(_prewarm);
+		}
+
 		return true;
 	}
 
+	/**
+	 * Build all contracts and open (migrate) the database in background right after onCreate().
+	 * Requests arriving meanwhile wait for the contract or database being prepared instead of
+	 * preparing it again. Disabled by default.
+	 */
+	protected boolean isPrewarmEnabled()
+	{
+		return false;
+	}
+
+	/**
+	 * Executor of the prewarm task, a new daemon thread by default
+	 */
+	protected Executor getPrewarmExecutor()
+	{
+		return new Executor()
+		{
+			@Override
+			public void execute(@SuppressWarnings("NullableProblems") Runnable runnable)
+			{
+				final Thread thread = new Thread(runnable, "cphm-prewarm");
+				thread.setDaemon(true);
+				thread.start();
+			}
+		};
+	}
+
+	/**
+	 * Blocks until the prewarm started by onCreate() is done, returns at once when it is disabled.
+	 * Failures are not rethrown: the first request runs into them again.
+	 */
+	public void awaitPrewarm() throws InterruptedException
+	{
+		final FutureTask<Void> prewarm = _prewarm;
+		if (prewarm != null) {
+			try {
+				prewarm.get();
+			} catch (ExecutionException e) {
+				// already logged by _prewarm()
+			}
+		}
+	}
+
+	private void _prewarm()
+	{
+		final long start = System.nanoTime();
+		try {
+			_structure.prewarm();
+			_openHelper.getWritableDatabase();
+		} catch (RuntimeException e) {
+			Log.w(LOG_TAG, "Prewarm failed", e);
+			throw e;
+		}
+
+		Log.d(LOG_TAG, "Prewarm done in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+	/**
+	 * Window in which change notifications are collected and delivered once per distinct uri,
+	 * 0 (default) notifies on every write. Batches are always flushed at transaction end.
+	 */
+	protected long getNotificationDebounceMillis()
+	{
+		return 0;
+	}
+
+	public long getNotificationDeliveredCount()
+	{
+		return _notifier.getDeliveredCount();
+	}
+
+	public long getNotificationSuppressedCount()
+	{
+		return _notifier.getSuppressedCount();
+	}
+
+	/**
+	 * Memory budget of the query result cache, 0 (default) disables it. Requires API 11.
+	 * Repeated identical queries are served from immutable snapshots until a write
+	 * through this provider or a BaseSQLiteOpenHelper.rebuildTable() chunk touches one of their tables.
+	 * Other writes that bypass the provider, through getWritableDatabase() of the helper or from
+	 * another process, must be followed by invalidateCaches(). Migrations run when the
+	 * database is opened, before the first query, and need nothing.
+	 */
+	protected long getQueryCacheBytes()
+	{
+		return 0;
+	}
+
+	/**
+	 * Results with more rows are never cached
+	 */
+	protected int getQueryCacheMaxRows()
+	{
+		return QUERY_CACHE_MAX_ROWS;
+	}
+
+	/**
+	 * Drops cached models and query results of the table after it was written without this provider
+	 */
+	public void invalidateCaches(String tableName)
+	{
+		_onWrite(tableName, RouteTable.NO_ID);
+	}
+
+	public long getQueryCacheHitCount()
+	{
+		return (_queryCache != null ? _queryCache.getHitCount() : 0);
+	}
+
+	public long getQueryCacheMissCount()
+	{
+		return (_queryCache != null ? _queryCache.getMissCount() : 0);
+	}
+
+	public long getQueryCacheEvictionCount()
+	{
+		return (_queryCache != null ? _queryCache.getEvictionCount() : 0);
+	}
+
+	/**
+	 * Maximum number of compiled statements kept for by-id updates, deletes and inserts
+	 */
+	protected int getStatementCacheSize()
+	{
+		return STATEMENT_CACHE_SIZE;
+	}
+
+	public long getStatementCacheHitCount()
+	{
+		return _statementCache.getHitCount();
+	}
+
+	public long getStatementCacheMissCount()
+	{
+		return _statementCache.getMissCount();
+	}
+
+	/**
+	 * Called once from onCreate(), null (default) measures nothing and costs nothing.
+	 * Keep the returned instance to read the counters and the slow query log.
+	 * Rows of queries are counted with Cursor.getCount(), which fills the first window while measured.
+	 */
+	protected ProviderMetrics getMetrics()
+	{
+		return null;
+	}
+
+	/**
+	 * Called once from onCreate(), null (default) disables query plan diagnostics.
+	 * Keep the returned instance to dump() the shapes that scan or sort.
+	 */
+	protected QueryPlanRecorder getQueryPlanRecorder()
+	{
+		return null;
+	}
+
+	/**
+	 * Called once from onCreate(), null (default) disables workload recording.
+	 * Keep the returned instance to dump() index advice for the structure.
+	 */
+	protected IndexAdvisor getIndexAdvisor()
+	{
+		return null;
+	}
+
 	@Override
 	public Cursor query(@SuppressWarnings("NullableProblems") Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder)
 	{
-		Log.d(LOG_TAG, "QUERY: " + uri.toString());
+		return _query(uri, projection, selection, selectionArgs, sortOrder, null);
+	}
+
+	/**
+	 * API 16+: the query is aborted with OperationCanceledException when the signal is cancelled
+	 */
+	@Override
+	public Cursor query(@SuppressWarnings("NullableProblems") Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder, CancellationSignal cancellationSignal)
+	{
+		return _query(uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+	}
 
-		final Pair<String[], Long> type = _getType(uri);
-		if (type == null) {
+	private Cursor _query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder, CancellationSignal cancellationSignal)
+	{
+		final ProviderMetrics metrics = _metrics;
+		final long start = (metrics != null ? System.nanoTime() : 0);
+
+		if (cancellationSignal != null) {
+			cancellationSignal.throwIfCanceled();
+		}
+
+		final RouteTable.Route route = _routes.getRoute(uri);
+		final long itemId = RouteTable.getId(uri);
+		if (route == null) {
 			throw new IllegalArgumentException("Unknown uri " + uri);
 		}
 		final String limitParameter = uri.getQueryParameter(PARAM_LIMIT);
 
+		final QueryCache queryCache = _queryCache;
+		final String cacheKey;
+		final long[] generations;
+		if (queryCache != null) {
+			cacheKey = QueryCache.key(uri.toString(), projection, selection, selectionArgs, sortOrder);
+			final Cursor cached = queryCache.get(cacheKey);
+			if (cached != null) {
+				if (metrics != null) {
+					metrics.record(ProviderMetrics.Operation.QUERY, route.name, cached.getCount(), System.nanoTime() - start);
+				}
+
+				return _setNotificationUri(cached, uri);
+			}
+			generations = queryCache.getGenerations(route.tables);
+		} else {
+			cacheKey = null;
+			generations = null;
+		}
+
 		final SQLiteDatabase db = _openHelper.getReadableDatabase();
 
-		final Cursor cursor;
-		if (type.second != null) {
-			if (type.first.length > 1) {
+		String from = route.table;
+		String[] joinOn = null;
+		if (itemId != RouteTable.NO_ID) {
+			if (route.join) {
 				throw new IllegalArgumentException("Unknown uri " + uri);
 			}
 
 			if (TextUtils.isEmpty(selection)) {
-				cursor = db.query(
-					type.first[0],
-					projection,
-					BaseColumns.CN_ID + " = " + type.second,
-					null,
-					null,
-					null,
-					sortOrder
-				);
+				selection = WHERE_ID;
+				selectionArgs = new String[] { Long.toString(itemId) };
 			} else {
-				cursor = db.query(
-					type.first[0],
-					projection,
-					"(" + selection + ") AND " + BaseColumns.CN_ID + " = " + type.second,
-					selectionArgs,
-					null,
-					null,
-					sortOrder
-				);
+				selection = "(" + selection + ") AND " + WHERE_ID;
+				selectionArgs = _appendArg(selectionArgs, Long.toString(itemId));
 			}
-		} else if (type.first.length > 1) {
+		} else if (route.join) {
 			final String queryParameter = uri.getQueryParameter(PARAM_JOIN_ON);
-			final String[] joinOn = (TextUtils.isEmpty(queryParameter) ? null : queryParameter.split(","));
-			final StringBuilder stringBuilder = new StringBuilder(type.first[0]);
-			for (int i = 1, j = 0; i < type.first.length; i++, j++) {
-				stringBuilder.append(" JOIN ").append(type.first[i]);
+			joinOn = (TextUtils.isEmpty(queryParameter) ? null : queryParameter.split(","));
+			final StringBuilder stringBuilder = new StringBuilder(route.table);
+			for (int i = 1, j = 0; i < route.tables.length; i++, j++) {
+				stringBuilder.append(" JOIN ").append(route.tables[i]);
 				if (joinOn != null && j < joinOn.length && !TextUtils.isEmpty(joinOn[j])) {
 					stringBuilder.append(" ON (").append(joinOn[j]).append(")");
 				}
 			}
 
+			from = stringBuilder.toString();
+		}
+
+		final QueryPlanRecorder planRecorder = _planRecorder;
+		if (planRecorder != null) {
+			_explain(planRecorder, db, route, from, joinOn, projection, selection, selectionArgs, sortOrder, limitParameter);
+		}
+		final IndexAdvisor indexAdvisor = _indexAdvisor;
+		if (indexAdvisor != null) {
+			indexAdvisor.record(_structure, from, route.tables, selection, joinOn, sortOrder);
+		}
+
+		Cursor cursor;
+		if (route.join) {
 			final SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
-			queryBuilder.setTables(stringBuilder.toString());
+			queryBuilder.setTables(from);
 
-			cursor = queryBuilder.query(db, projection, selection, selectionArgs, null, null, sortOrder, limitParameter);
+			if (cancellationSignal != null) {
+				cursor = queryBuilder.query(db, projection, selection, selectionArgs, null, null, sortOrder, limitParameter, cancellationSignal);
+			} else {
+				cursor = queryBuilder.query(db, projection, selection, selectionArgs, null, null, sortOrder, limitParameter);
+			}
 		} else {
-			cursor = db.query(type.first[0], projection, selection, selectionArgs, null, null, sortOrder, limitParameter);
+			cursor = _query(db, route.table, projection, selection, selectionArgs, sortOrder, limitParameter, cancellationSignal);
+		}
+
+		if (queryCache != null) {
+			cursor = queryCache.put(cacheKey, route.tables, generations, cursor);
+		}
+
+		if (metrics != null) {
+			final int rows = cursor.getCount();
+			final long duration = System.nanoTime() - start;
+			if (metrics.record(ProviderMetrics.Operation.QUERY, route.name, rows, duration)) {
+				metrics.onSlowQuery(
+					ProviderMetrics.Operation.QUERY,
+					route.name,
+					SQLiteQueryBuilder.buildQueryString(false, from, projection, selection, null, null, sortOrder, limitParameter),
+					(selectionArgs != null ? selectionArgs.length : 0),
+					rows,
+					duration
+				);
+			}
+		}
+
+		return _setNotificationUri(cursor, uri);
+	}
+
+	/**
+	 * Runs EXPLAIN QUERY PLAN for a query shape not seen before. A failing statement is only logged,
+	 * the query itself reports the error.
+	 */
+	private void _explain(
+		QueryPlanRecorder planRecorder,
+		SQLiteDatabase db,
+		RouteTable.Route route,
+		String from,
+		String[] joinOn,
+		String[] projection,
+		String selection,
+		String[] selectionArgs,
+		String sortOrder,
+		String limit
+	)
+	{
+		final String sql = SQLiteQueryBuilder.buildQueryString(false, from, projection, selection, null, null, sortOrder, limit);
+		if (!planRecorder.shouldExplain(sql)) {
+			return;
+		}
+
+		final List<String> details = new ArrayList<>();
+		try {
+			final Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+			try {
+				int column = cursor.getColumnIndex("detail");
+				if (column < 0) {
+					column = cursor.getColumnCount() - 1;
+				}
+				while (cursor.moveToNext()) {
+					details.add(cursor.getString(column));
+				}
+			} finally {
+				cursor.close();
+			}
+		} catch (SQLException e) {
+			Log.w(LOG_TAG, "EXPLAIN QUERY PLAN failed: " + sql, e);
+			return;
+		}
+
+		planRecorder.add(_structure, sql, route.tables, selection, joinOn, sortOrder, details);
+	}
+
+	private static Cursor _query(
+		SQLiteDatabase db,
+		String table,
+		String[] projection,
+		String selection,
+		String[] selectionArgs,
+		String sortOrder,
+		String limit,
+		CancellationSignal cancellationSignal
+	)
+	{
+		if (cancellationSignal != null) {
+			return db.query(false, table, projection, selection, selectionArgs, null, null, sortOrder, limit, cancellationSignal);
 		}
 
+		return db.query(table, projection, selection, selectionArgs, null, null, sortOrder, limit);
+	}
+
+	private Cursor _setNotificationUri(Cursor cursor, Uri uri)
+	{
 		final Context context = getContext();
 		if (context != null) {
 			cursor.setNotificationUri(context.getContentResolver(), uri); // NOTE: check if join
@@ -107,80 +474,260 @@ public abstract class BaseProvider extends ContentProvider
 	@Override
 	public String getType(@SuppressWarnings("NullableProblems") Uri uri)
 	{
-		final Pair<String[], Long> type = _getType(uri);
-		if (type == null) {
+		final RouteTable.Route route = _routes.getRoute(uri);
+		final long itemId = RouteTable.getId(uri);
+		if (route == null) {
 			throw new IllegalArgumentException("Unknown uri " + uri);
 		}
 
-		if (type.second != null) {
-			return "vnd.android.cursor.item/vdn." + TextUtils.join(".", type.first);
+		if (itemId != RouteTable.NO_ID) {
+			return route.itemType;
 		} else {
-			return "vnd.android.cursor.dir/vdn." + TextUtils.join(".", type.first);
+			return route.dirType;
 		}
 	}
 
 	@Override
 	public Uri insert(@SuppressWarnings("NullableProblems") Uri uri, ContentValues values)
 	{
-		Log.d(LOG_TAG, "INSERT: " + uri.toString());
+		final ProviderMetrics metrics = _metrics;
+		final long start = (metrics != null ? System.nanoTime() : 0);
 
-		final Pair<String[], Long> type = _getType(uri);
-		if (type == null || type.second != null || type.first.length > 1) {
+		final RouteTable.Route route = _routes.getRoute(uri);
+		final long itemId = RouteTable.getId(uri);
+		if (route == null || itemId != RouteTable.NO_ID || route.join) {
 			throw new IllegalArgumentException("Unknown uri " + uri);
 		}
 
 		final SQLiteDatabase db = _openHelper.getWritableDatabase();
+		_checkNotRebuilding(route.table);
 
-//		final long id;
+		final long id;
+		if (uri.getQueryParameter(PARAM_UPSERT) != null) {
+			id = _upsert(db, route.table, values, _getColumnsParameter(uri, PARAM_EXCLUDE_FROM_UPDATE), _getColumnsParameter(uri, PARAM_UPDATE_ONLY));
+		} else {
 //		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) {
-			int onConflict = SQLiteDatabase.CONFLICT_NONE;
-			final String queryConflict = uri.getQueryParameter(PARAM_ON_CONFLICT);
-			if (!TextUtils.isEmpty(queryConflict)) {
-				onConflict = Integer.parseInt(queryConflict);
-			}
-			final long id = db.insertWithOnConflict(type.first[0], null, values, onConflict);
+			id = db.insertWithOnConflict(route.table, null, values, _getOnConflict(uri));
 //		} else {
-//			id = db.insertOrThrow(type.first[0], null, values);
+//			id = db.insertOrThrow(route.table, null, values);
 //		}
+		}
 
-		final Context context = getContext();
-		if (id > 0 && !db.inTransaction() && context != null) {
-			context.getContentResolver().notifyChange(uri, null);
+		if (_mayReplace(route.table, _getOnConflict(uri))) {
+			_onWrite(route.table, RouteTable.NO_ID);
+		} else if (id > 0) {
+			_onWrite(route.table, id);
+		}
+
+		if (id > 0 && !db.inTransaction()) {
+			_notifier.notifyChange(route.table, uri);
+		}
+
+		if (metrics != null) {
+			_record(metrics, ProviderMetrics.Operation.INSERT, route.table, values, null, null, RouteTable.NO_ID, (id > 0 ? 1 : 0), start);
 		}
 
 		return ContentUris.withAppendedId(uri, id);
 	}
 
+	/**
+	 * Inserts all rows in one transaction, compiling one statement per distinct set of columns.
+	 * Any failing row rolls back the whole batch. With PARAM_UPSERT every row is upserted instead.
+	 */
+	@Override
+	public int bulkInsert(@SuppressWarnings("NullableProblems") Uri uri, @SuppressWarnings("NullableProblems") ContentValues[] values)
+	{
+		final ProviderMetrics metrics = _metrics;
+		final long start = (metrics != null ? System.nanoTime() : 0);
+
+		final RouteTable.Route route = _routes.getRoute(uri);
+		final long itemId = RouteTable.getId(uri);
+		if (route == null || itemId != RouteTable.NO_ID || route.join) {
+			throw new IllegalArgumentException("Unknown uri " + uri);
+		}
+
+		final SQLiteDatabase db = _openHelper.getWritableDatabase();
+		_checkNotRebuilding(route.table);
+		final String sqlPrefix = "INSERT" + CONFLICT_VALUES[_getOnConflict(uri)] + " INTO \"" + route.table + "\"";
+
+		final boolean upsert = (uri.getQueryParameter(PARAM_UPSERT) != null);
+		final Set<String> excludeFromUpdate = _getColumnsParameter(uri, PARAM_EXCLUDE_FROM_UPDATE);
+		final Set<String> updateOnly = _getColumnsParameter(uri, PARAM_UPDATE_ONLY);
+
+		final Map<Set<String>, InsertStatement> statements = new HashMap<>();
+		int inserted = 0;
+
+		db.beginTransaction();
+		try {
+			InsertStatement last = null;
+			for (ContentValues cv : values) {
+				if (upsert) {
+					if (_upsert(db, route.table, cv, excludeFromUpdate, updateOnly) > 0) {
+						inserted++;
+					}
+					continue;
+				}
+
+				final Set<String> columns = cv.keySet();
+				if (last == null || !last.columns.equals(columns)) {
+					last = statements.get(columns);
+					if (last == null) {
+						last = new InsertStatement(sqlPrefix, columns);
+						statements.put(last.columns, last);
+					}
+				}
+
+				if (_statementCache.executeInsert(db, last.sql, last.bindArgs(cv)) > 0) {
+					inserted++;
+				}
+			}
+
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+
+			_onWrite(route.table, RouteTable.NO_ID);
+		}
+
+		if (inserted > 0 && !db.inTransaction()) {
+			_notifier.notifyChange(route.table, uri);
+			_notifier.flush();
+		}
+
+		if (metrics != null) {
+			final long duration = System.nanoTime() - start;
+			if (metrics.record(ProviderMetrics.Operation.BULK_INSERT, route.table, inserted, duration)) {
+				int bindCount = 0;
+				for (ContentValues cv : values) {
+					bindCount += cv.size();
+				}
+				metrics.onSlowQuery(
+					ProviderMetrics.Operation.BULK_INSERT,
+					route.table,
+					values.length + " x " + (values.length > 0 ? _describe(ProviderMetrics.Operation.INSERT, route.table, values[0], null) : sqlPrefix),
+					bindCount,
+					inserted,
+					duration
+				);
+			}
+		}
+
+		return inserted;
+	}
+
+	/**
+	 * Applies the whole batch in one transaction. Operations built with withYieldAllowed(true)
+	 * are yield points, where the transaction may be committed to let other connections in.
+	 * Changed tables are notified once, after the batch has been committed.
+	 */
+	@Override
+	public ContentProviderResult[] applyBatch(@SuppressWarnings("NullableProblems") ArrayList<ContentProviderOperation> operations)
+		throws OperationApplicationException
+	{
+		final ProviderMetrics metrics = _metrics;
+		final long start = (metrics != null ? System.nanoTime() : 0);
+
+		final Map<String, Uri> changed = new HashMap<>();
+		final ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+
+		final SQLiteDatabase db = _openHelper.getWritableDatabase();
+		db.beginTransaction();
+		try {
+			for (int i = 0; i < results.length; i++) {
+				final ContentProviderOperation operation = operations.get(i);
+				if (i > 0 && operation.isYieldAllowed()) {
+					db.yieldIfContendedSafely();
+				}
+
+				final Uri uri = operation.getUri();
+				final RouteTable.Route route = _routes.getRoute(uri);
+				if (route != null && !changed.containsKey(route.table)) {
+					changed.put(route.table, _getTableUri(uri, route.table));
+				}
+
+				results[i] = operation.apply(this, results, i);
+			}
+
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+
+			// rows written inside the transaction could have been cached again before commit
+			for (String table : changed.keySet()) {
+				_onWrite(table, RouteTable.NO_ID);
+			}
+		}
+
+		if (!db.inTransaction()) {
+			for (Map.Entry<String, Uri> entry : changed.entrySet()) {
+				_notifier.notifyChange(entry.getKey(), entry.getValue());
+			}
+			_notifier.flush();
+		}
+
+		if (metrics != null) {
+			final long duration = System.nanoTime() - start;
+			if (metrics.record(ProviderMetrics.Operation.APPLY_BATCH, null, results.length, duration)) {
+				metrics.onSlowQuery(
+					ProviderMetrics.Operation.APPLY_BATCH,
+					null,
+					results.length + " operations on " + TextUtils.join(", ", changed.keySet()),
+					0,
+					results.length,
+					duration
+				);
+			}
+		}
+
+		return results;
+	}
+
 	@Override
 	public int delete(@SuppressWarnings("NullableProblems") Uri uri, String selection, String[] selectionArgs)
 	{
-		Log.d(LOG_TAG, "DELETE: " + uri.toString());
+		final ProviderMetrics metrics = _metrics;
+		final long start = (metrics != null ? System.nanoTime() : 0);
 
-		final Pair<String[], Long> type = _getType(uri);
-		if (type == null || type.first.length > 1) {
+		final RouteTable.Route route = _routes.getRoute(uri);
+		final long itemId = RouteTable.getId(uri);
+		if (route == null || route.join) {
 			throw new IllegalArgumentException("Unknown uri " + uri);
 		}
 
 		final SQLiteDatabase db = _openHelper.getWritableDatabase();
+		_checkNotRebuilding(route.table);
 
 		final int rowsAffected;
-		if (type.second != null) {
-			if (TextUtils.isEmpty(selection)) {
-				rowsAffected = db.delete(type.first[0], BaseColumns.CN_ID + " = " + type.second, null);
+		if (itemId != RouteTable.NO_ID) {
+			if (TextUtils.isEmpty(selection) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+				rowsAffected = _statementCache.executeUpdateDelete(
+					db,
+					"DELETE FROM \"" + route.table + "\" WHERE " + WHERE_ID,
+					new Object[] { itemId }
+				);
+			} else if (TextUtils.isEmpty(selection)) {
+				rowsAffected = db.delete(route.table, WHERE_ID, new String[] { Long.toString(itemId) });
 			} else {
 				rowsAffected = db.delete(
-					type.first[0],
-					"(" + selection + ") AND " + BaseColumns.CN_ID + " = " + type.second,
-					selectionArgs
+					route.table,
+					"(" + selection + ") AND " + WHERE_ID,
+					_appendArg(selectionArgs, Long.toString(itemId))
 				);
 			}
 		} else {
-			rowsAffected = db.delete(type.first[0], selection, selectionArgs);
+			rowsAffected = db.delete(route.table, selection, selectionArgs);
 		}
 
-		final Context context = getContext();
-		if ((selection == null || rowsAffected != 0) && !db.inTransaction() && context != null) {
-			context.getContentResolver().notifyChange(uri, null);
+		if (rowsAffected != 0) {
+			_onWrite(route.table, itemId);
+		}
+
+		if ((selection == null || rowsAffected != 0) && !db.inTransaction()) {
+			_notifier.notifyChange(route.table, uri);
+		}
+
+		if (metrics != null) {
+			_record(metrics, ProviderMetrics.Operation.DELETE, route.table, null, selection, selectionArgs, itemId, rowsAffected, start);
 		}
 
 		return rowsAffected;
@@ -189,96 +736,442 @@ public abstract class BaseProvider extends ContentProvider
 	@Override
 	public int update(@SuppressWarnings("NullableProblems") Uri uri, ContentValues values, String selection, String[] selectionArgs)
 	{
-		Log.d(LOG_TAG, "UPDATE: " + uri.toString());
+		final ProviderMetrics metrics = _metrics;
+		final long start = (metrics != null ? System.nanoTime() : 0);
 
-		final Pair<String[], Long> type = _getType(uri);
-		if (type == null || type.first.length > 1) {
+		final RouteTable.Route route = _routes.getRoute(uri);
+		final long itemId = RouteTable.getId(uri);
+		if (route == null || route.join) {
 			throw new IllegalArgumentException("Unknown uri " + uri);
 		}
 
 		final SQLiteDatabase db = _openHelper.getWritableDatabase();
+		_checkNotRebuilding(route.table);
 
 		final int rowsAffected;
 //		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) {
-			int onConflict = SQLiteDatabase.CONFLICT_NONE;
-			final String queryConflict = uri.getQueryParameter(PARAM_ON_CONFLICT);
-			if (!TextUtils.isEmpty(queryConflict)) {
-				onConflict = Integer.parseInt(queryConflict);
-			}
-			if (type.second != null) {
-				if (TextUtils.isEmpty(selection)) {
+			final int onConflict = _getOnConflict(uri);
+			if (itemId != RouteTable.NO_ID) {
+				if (TextUtils.isEmpty(selection) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+					rowsAffected = _updateById(db, route.table, values, itemId, onConflict);
+				} else if (TextUtils.isEmpty(selection)) {
 					rowsAffected = db.updateWithOnConflict(
-							type.first[0],
+							route.table,
 							values,
-							BaseColumns.CN_ID + " = " + type.second,
-							null,
+							WHERE_ID,
+							new String[] { Long.toString(itemId) },
 							onConflict
 					);
 				} else {
 					rowsAffected = db.updateWithOnConflict(
-							type.first[0],
+							route.table,
 							values,
-							"(" + selection + ") AND " + BaseColumns.CN_ID + " = " + type.second,
-							selectionArgs,
+							"(" + selection + ") AND " + WHERE_ID,
+							_appendArg(selectionArgs, Long.toString(itemId)),
 							onConflict
 					);
 				}
 			} else {
-				rowsAffected = db.updateWithOnConflict(type.first[0], values, selection, selectionArgs, onConflict);
+				rowsAffected = db.updateWithOnConflict(route.table, values, selection, selectionArgs, onConflict);
 			}
 //		} else {
-//			if (type.second != null) {
+//			if (itemId != RouteTable.NO_ID) {
 //				if (TextUtils.isEmpty(selection)) {
 //					rowsAffected = db.update(
-//							type.first[0],
+//							route.table,
 //							values,
-//							BaseColumns.CN_ID + " = " + type.second,
+//							BaseColumns.CN_ID + " = " + itemId,
 //							null
 //					);
 //				} else {
 //					rowsAffected = db.update(
-//							type.first[0],
+//							route.table,
 //							values,
-//							"(" + selection + ") AND " + BaseColumns.CN_ID + " = " + type.second,
+//							"(" + selection + ") AND " + BaseColumns.CN_ID + " = " + itemId,
 //							selectionArgs
 //					);
 //				}
 //			} else {
-//				rowsAffected = db.update(type.first[0], values, selection, selectionArgs);
+//				rowsAffected = db.update(route.table, values, selection, selectionArgs);
 //			}
 //		}
 
-		final Context context = getContext();
-		if (rowsAffected != 0 && !db.inTransaction() && context != null) {
-			context.getContentResolver().notifyChange(uri, null);
+		if (rowsAffected != 0) {
+			_onWrite(route.table, (_mayReplace(route.table, onConflict) ? RouteTable.NO_ID : itemId));
+		}
+
+		if (rowsAffected != 0 && !db.inTransaction()) {
+			_notifier.notifyChange(route.table, uri);
+		}
+
+		if (metrics != null) {
+			_record(metrics, ProviderMetrics.Operation.UPDATE, route.table, values, selection, selectionArgs, itemId, rowsAffected, start);
 		}
 
 		return rowsAffected;
 	}
 
-	private Pair<String[], Long> _getType(Uri uri)
+	/**
+	 * @return version of the linked SQLite library as 3024000 for 3.24.0
+	 */
+	protected int getSqliteVersion(SQLiteDatabase db)
+	{
+		if (_sqliteVersion == 0) {
+			final String[] parts = DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null).split("\\.");
+			int version = 0;
+			for (int i = 0; i < 3; i++) {
+				version = version * 1000 + (i < parts.length ? Integer.parseInt(parts[i]) : 0);
+			}
+			_sqliteVersion = version;
+		}
+
+		return _sqliteVersion;
+	}
+
+	/**
+	 * Inserts the row or updates the existing one in a single INSERT ... ON CONFLICT DO UPDATE statement.
+	 * Conflict targets are the primary key (when values contain it) and every UNIQUE constraint
+	 * fully covered by the values. SQLite before 3.35 allows a single target, with several targets
+	 * it falls back to insert, then update by _id, as versions before 3.24 do.
+	 *
+	 * @return _id of the inserted or updated row, or -1
+	 */
+	private long _upsert(SQLiteDatabase db, String table, ContentValues values, Set<String> excludeFromUpdate, Set<String> updateOnly)
 	{
-		final List<String> segments = uri.getPathSegments();
+		final Long valuesId = values.getAsLong(BaseColumns.CN_ID);
+
+		final List<String> updateColumns = new ArrayList<>(values.size());
+		for (String column : values.keySet()) {
+			if (
+				column.equals(BaseColumns.CN_ID)
+					|| (excludeFromUpdate != null && excludeFromUpdate.contains(column))
+					|| (updateOnly != null && !updateOnly.contains(column))
+				) {
+				continue;
+			}
+			updateColumns.add(column);
+		}
+
+		final int sqliteVersion = getSqliteVersion(db);
+		if (sqliteVersion < SQLITE_VERSION_UPSERT) {
+			return _upsertLegacy(db, table, values, valuesId, updateColumns);
+		}
+
+		final List<String[]> targets = new ArrayList<>();
+		if (valuesId != null && valuesId > 0) {
+			targets.add(new String[] { BaseColumns.CN_ID });
+		}
+		for (BaseStructure.ConstraintHolder constraint : _structure.getTableHolders().get(table).constraints) {
+			if (constraint.constraint != BaseStructure.Constraint.UNIQUE) {
+				continue;
+			}
+
+			boolean covered = true;
+			for (String column : constraint.columns) {
+				if (!values.containsKey(column)) {
+					covered = false;
+					break;
+				}
+			}
+			if (covered) {
+				targets.add(constraint.columns);
+			}
+		}
 
-		final String[] tables = segments.get(0).split(",");
+		if (targets.isEmpty()) {
+			return db.insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_NONE);
+		}
+		if (targets.size() > 1 && sqliteVersion < SQLITE_VERSION_UPSERT_MULTIPLE) {
+			return _upsertLegacy(db, table, values, valuesId, updateColumns);
+		}
+
+		final String[] columns = values.keySet().toArray(new String[values.size()]);
+		final StringBuilder builder = new StringBuilder("INSERT INTO \"").append(table).append("\" (\"")
+			.append(TextUtils.join("\", \"", columns)).append("\") VALUES (?");
+		for (int i = 1; i < columns.length; i++) {
+			builder.append(", ?");
+		}
+		builder.append(")");
+		for (String[] target : targets) {
+			builder.append(" ON CONFLICT (\"").append(TextUtils.join("\", \"", target)).append("\") DO ");
+			if (updateColumns.isEmpty()) {
+				builder.append("NOTHING");
+			} else {
+				builder.append("UPDATE SET ");
+				for (int i = 0; i < updateColumns.size(); i++) {
+					final String column = updateColumns.get(i);
+					builder.append(i > 0 ? ", \"" : "\"").append(column).append("\" = excluded.\"").append(column).append('"');
+				}
+			}
+		}
+
+		final Object[] bindArgs = new Object[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			bindArgs[i] = values.get(columns[i]);
+		}
+		final long rowId = _statementCache.executeInsert(db, builder.toString(), bindArgs);
 
-		if (tables.length < 1) {
+		if (targets.size() == 1 && valuesId != null && valuesId > 0) {
+			return valuesId;
+		}
+
+		// last_insert_rowid() is not changed by DO UPDATE, so look the row up by the targets in the order
+		// SQLite checks them: the primary key first, then the UNIQUE constraints
+		for (String[] target : targets) {
+			final long id = _findId(db, table, target, values);
+			if (id > 0) {
+				return id;
+			}
+		}
+
+		return rowId;
+	}
+
+	/**
+	 * @return _id of the row with the values of the target columns, or -1
+	 */
+	private static long _findId(SQLiteDatabase db, String table, String[] target, ContentValues values)
+	{
+		final String[] args = new String[target.length];
+		for (int i = 0; i < target.length; i++) {
+			args[i] = values.getAsString(target[i]);
+			if (args[i] == null) {
+				return -1; // NULLs never conflict
+			}
+		}
+
+		final Cursor cursor = db.rawQuery(
+			"SELECT " + BaseColumns.CN_ID + " FROM \"" + table + "\" WHERE \"" + TextUtils.join("\" = ? AND \"", target) + "\" = ?",
+			args
+		);
+		try {
+			return (cursor.moveToFirst() ? cursor.getLong(0) : -1);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private static long _upsertLegacy(SQLiteDatabase db, String table, ContentValues values, Long valuesId, List<String> updateColumns)
+	{
+		try {
+			final long id = db.insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_NONE);
+			if (id > 0) {
+				return id;
+			}
+		} catch (SQLException ignored) {
+		}
+
+		if (valuesId == null || valuesId <= 0) {
+			return -1;
+		}
+
+		if (!updateColumns.isEmpty()) {
+			final ContentValues cv = new ContentValues(values);
+			for (String column : values.keySet()) {
+				if (!updateColumns.contains(column)) {
+					cv.remove(column);
+				}
+			}
+
+			db.update(table, cv, BaseColumns.CN_ID + " = ?", new String[] { Long.toString(valuesId) });
+		}
+
+		return valuesId;
+	}
+
+	private static Set<String> _getColumnsParameter(Uri uri, String parameter)
+	{
+		final String value = uri.getQueryParameter(parameter);
+		if (value == null) {
 			return null;
 		}
 
-		for (final String table : tables) {
-			if (!_structure.containsTable(table)) {
-				return null;
+		final Set<String> result = new HashSet<>();
+		if (!TextUtils.isEmpty(value)) {
+			Collections.addAll(result, value.split(","));
+		}
+
+		return result;
+	}
+
+	private static Uri _getTableUri(Uri uri, String table)
+	{
+		return new Uri.Builder()
+			.scheme(uri.getScheme())
+			.encodedAuthority(uri.getEncodedAuthority())
+			.appendPath(table)
+			.build();
+	}
+
+	private static int _getOnConflict(Uri uri)
+	{
+		final String queryConflict = uri.getQueryParameter(PARAM_ON_CONFLICT);
+		if (!TextUtils.isEmpty(queryConflict)) {
+			return Integer.parseInt(queryConflict);
+		}
+
+		return SQLiteDatabase.CONFLICT_NONE;
+	}
+
+	private static void _record(
+		ProviderMetrics metrics,
+		ProviderMetrics.Operation operation,
+		String table,
+		ContentValues values,
+		String selection,
+		String[] selectionArgs,
+		long itemId,
+		int rows,
+		long start
+	)
+	{
+		final long duration = System.nanoTime() - start;
+		if (metrics.record(operation, table, rows, duration)) {
+			int bindCount = (values != null ? values.size() : 0) + (selectionArgs != null ? selectionArgs.length : 0);
+			if (itemId != RouteTable.NO_ID) {
+				selection = (TextUtils.isEmpty(selection) ? WHERE_ID : "(" + selection + ") AND " + WHERE_ID);
+				bindCount++;
+			}
+
+			metrics.onSlowQuery(operation, table, _describe(operation, table, values, selection), bindCount, rows, duration);
+		}
+	}
+
+	/**
+	 * @return SQL equivalent to the write, only the shape: values are not included
+	 */
+	private static String _describe(ProviderMetrics.Operation operation, String table, ContentValues values, String selection)
+	{
+		final String columns = (values != null ? "\"" + TextUtils.join("\", \"", values.keySet()) + "\"" : "");
+		final String where = (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection);
+		switch (operation) {
+			case INSERT:
+				return "INSERT INTO \"" + table + "\" (" + columns + ")";
+			case UPDATE:
+				return "UPDATE \"" + table + "\" SET " + columns.replace("\",", "\" = ?,") + " = ?" + where;
+			case DELETE:
+				return "DELETE FROM \"" + table + "\"" + where;
+			default:
+				return operation + " " + table;
+		}
+	}
+
+	/**
+	 * Writes during a chunked rebuild could be lost or overwritten, see BaseSQLiteOpenHelper.rebuildTable()
+	 */
+	private void _checkNotRebuilding(String table)
+	{
+		if (_openHelper instanceof BaseSQLiteOpenHelper && ((BaseSQLiteOpenHelper) _openHelper).isRebuilding(table)) {
+			throw new IllegalStateException("Table " + table + " is being rebuilt, resumeRebuilds() must complete first");
+		}
+	}
+
+	/**
+	 * Invalidates cached models and query results of the table, or of a single row when id is known
+	 */
+	private void _onWrite(String table, long id)
+	{
+		final QueryCache queryCache = _queryCache;
+		if (queryCache != null) {
+			queryCache.onWrite(table);
+		}
+
+		if (id != RouteTable.NO_ID) {
+			_structure.invalidateModel(table, id);
+		} else {
+			_structure.invalidateModels(table);
+		}
+	}
+
+	/**
+	 * @return true when an insert may silently delete other rows of the table
+	 */
+	private boolean _mayReplace(String table, int onConflict)
+	{
+		if (onConflict == SQLiteDatabase.CONFLICT_REPLACE) {
+			return true;
+		}
+
+		final BaseStructure.TableHolder tableHolder = _structure.getTableHolders().get(table);
+		if (tableHolder.pkOnConflict == BaseStructure.OnConflict.REPLACE) {
+			return true;
+		}
+		for (BaseStructure.ConstraintHolder constraint : tableHolder.constraints) {
+			if (constraint.onConflict == BaseStructure.OnConflict.REPLACE) {
+				return true;
 			}
 		}
 
-		if (segments.size() > 1) {
-			final String id = segments.get(1);
-			if (id.length() > 0) {
-				return Pair.create(tables, Long.parseLong(id));
+		return false;
+	}
+
+	private int _updateById(SQLiteDatabase db, String table, ContentValues values, long id, int onConflict)
+	{
+		if (values == null || values.size() == 0) {
+			throw new IllegalArgumentException("Empty values");
+		}
+
+		final StringBuilder builder = new StringBuilder(120)
+			.append("UPDATE").append(CONFLICT_VALUES[onConflict]).append(" \"").append(table).append("\" SET ");
+
+		final Object[] bindArgs = new Object[values.size() + 1];
+		int i = 0;
+		for (Map.Entry<String, Object> entry : values.valueSet()) {
+			builder.append(i > 0 ? ", \"" : "\"").append(entry.getKey()).append("\" = ?");
+			bindArgs[i++] = entry.getValue();
+		}
+		bindArgs[i] = id;
+		builder.append(" WHERE ").append(WHERE_ID);
+
+		return _statementCache.executeUpdateDelete(db, builder.toString(), bindArgs);
+	}
+
+	private static String[] _appendArg(String[] args, String arg)
+	{
+		if (args == null || args.length == 0) {
+			return new String[] { arg };
+		}
+
+		final String[] result = new String[args.length + 1];
+		System.arraycopy(args, 0, result, 0, args.length);
+		result[args.length] = arg;
+
+		return result;
+	}
+
+	private static class InsertStatement
+	{
+		final Set<String> columns;
+		final String sql;
+		private final String[] _columns;
+		private final Object[] _bindArgs;
+
+		InsertStatement(String sqlPrefix, Set<String> columns)
+		{
+			this.columns = new HashSet<>(columns);
+			_columns = columns.toArray(new String[columns.size()]);
+			_bindArgs = new Object[_columns.length];
+
+			if (_columns.length == 0) {
+				sql = sqlPrefix + " DEFAULT VALUES";
+			} else {
+				final StringBuilder builder = new StringBuilder(sqlPrefix)
+					.append(" (\"").append(TextUtils.join("\", \"", _columns)).append("\") VALUES (?");
+				for (int i = 1; i < _columns.length; i++) {
+					builder.append(", ?");
+				}
+				sql = builder.append(")").toString();
 			}
 		}
 
-		return Pair.create(tables, null);
+		Object[] bindArgs(ContentValues cv)
+		{
+			for (int i = 0; i < _columns.length; i++) {
+				_bindArgs[i] = cv.get(_columns[i]);
+			}
+
+			return _bindArgs;
+		}
 	}
+
 }
@@ -4,36 +4,115 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.text.TextUtils;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class BaseSQLiteOpenHelper extends SQLiteOpenHelper
 {
 	private static final String LOG_TAG = "BaseSQLiteOpenHelper";
 
+	static final String METADATA_TABLE = "cphm_metadata";
+	private static final String KEY_SCHEMA_FINGERPRINT = "schema_fingerprint";
+	private static final String KEY_REBUILD_PREFIX = "rebuild:";
+	private static final String REBUILD_TABLE_SUFFIX = "_rebuild_table";
+
+	public static final int DEFAULT_REBUILD_CHUNK_ROWS = 10000;
+
+	public interface RebuildListener
+	{
+		/**
+		 * Called after every committed chunk
+		 */
+		void onProgress(String tableName, long copiedRows, long totalRows);
+
+		void onComplete(String tableName);
+	}
+
+	/**
+	 * Told about rows rewritten without BaseProvider, which then drops its cached models and query results
+	 */
+	interface WriteListener
+	{
+		void onTableWritten(String tableName);
+	}
+
 	private final BaseStructure _structure;
+	private final DatabaseProfile _profile;
+	private final Set<String> _rebuilding = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private volatile WriteListener _writeListener;
 
 	public BaseSQLiteOpenHelper(Context context, String databaseFile, SQLiteDatabase.CursorFactory factory, int version)
 	{
 		super(context, databaseFile, factory, version);
 
 		_structure = getStructure();
+		_profile = getDatabaseProfile();
 	}
 
 	public abstract BaseStructure getStructure();
 
+	/**
+	 * Connection settings applied on every open, null keeps the defaults
+	 */
+	protected DatabaseProfile getDatabaseProfile()
+	{
+		return null;
+	}
+
+	/**
+	 * API 16+: runs before onCreate / onUpgrade, so the pragmas cover the migration too.
+	 * WAL is switched on here rather than with setWriteAheadLoggingEnabled(), after the page size:
+	 * SQLite ignores page_size once the file is in WAL mode.
+	 */
+	@Override
+	public void onConfigure(SQLiteDatabase db)
+	{
+		super.onConfigure(db);
+
+		if (_profile != null) {
+			_applyPageSize(db);
+			_applyWriteAheadLogging(db);
+			_applyPragmas(db);
+		}
+	}
+
+	@Override
+	public void onOpen(SQLiteDatabase db)
+	{
+		super.onOpen(db);
+
+		if (_profile != null && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+				_applyWriteAheadLogging(db); // after onCreate() set the page size
+			}
+			_applyPragmas(db);
+		}
+
+		if (!db.isReadOnly()) {
+			_rebuilding.clear();
+			_rebuilding.addAll(_getPendingRebuilds(db).keySet()); // started by onUpgrade() or an earlier process
+		}
+	}
+
 	@Override
 	public void onCreate(SQLiteDatabase db)
 	{
 		Log.v(LOG_TAG, "onCreate()");
 
+		if (_profile != null && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+			_applyPageSize(db); // no onConfigure, the file has no pages yet
+		}
+
 		final Map<String, BaseStructure.TableHolder> tableHolders = _structure.getTableHolders();
 		for (BaseStructure.TableHolder tableHolder : tableHolders.values()) {
 			_createTable(
@@ -52,13 +131,38 @@ public abstract class BaseSQLiteOpenHelper extends SQLiteOpenHelper
 			Log.d(LOG_TAG, sql);
 			db.execSQL(sql);
 		}
+
+		_setMetadata(db, KEY_SCHEMA_FINGERPRINT, _structure.getSchemaFingerprint());
 	}
 
+	/**
+	 * Brings tables and indexes to the structure in one transaction. Introspection is skipped
+	 * when the schema fingerprint stored by the last migration matches the current structure.
+	 */
 	@Override
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
 	{
 		Log.d(LOG_TAG, "onUpgrade(" + oldVersion + ", " + newVersion + ")");
 
+		final String fingerprint = _structure.getSchemaFingerprint();
+		if (fingerprint.equals(_getMetadata(db, KEY_SCHEMA_FINGERPRINT))) {
+			Log.v(LOG_TAG, "Schema fingerprint matches, nothing to upgrade");
+			return;
+		}
+
+		db.beginTransaction();
+		try {
+			_upgradeSchema(db);
+			_setMetadata(db, KEY_SCHEMA_FINGERPRINT, fingerprint);
+
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	private void _upgradeSchema(SQLiteDatabase db)
+	{
 		final String[] PROJECTION = {
 			"type",
 			"name",
@@ -121,6 +225,7 @@ public abstract class BaseSQLiteOpenHelper extends SQLiteOpenHelper
 			}
 		}
 
+		final Set<String> rebuilding = _getPendingRebuilds(db).keySet();
 		final Iterable<BaseStructure.IndexHolder> indexHolders = _structure.getIndexHolders();
 		for (BaseStructure.IndexHolder indexHolder : indexHolders) {
 			if (
@@ -129,6 +234,9 @@ public abstract class BaseSQLiteOpenHelper extends SQLiteOpenHelper
 				) {
 				continue;
 			}
+			if (rebuilding.contains(indexHolder.tableName)) {
+				continue; // created when the rebuild completes
+			}
 
 			final String sql = indexHolder.getDefinition();
 
@@ -137,6 +245,75 @@ public abstract class BaseSQLiteOpenHelper extends SQLiteOpenHelper
 		}
 	}
 
+	private static String _getMetadata(SQLiteDatabase db, String key)
+	{
+		_createMetadataTable(db);
+
+		final Cursor cursor = db.rawQuery("SELECT value FROM \"" + METADATA_TABLE + "\" WHERE key = ?;", new String[] { key });
+		try {
+			return (cursor.moveToFirst() ? cursor.getString(0) : null);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private static void _setMetadata(SQLiteDatabase db, String key, String value)
+	{
+		_createMetadataTable(db);
+
+		db.execSQL(
+			"INSERT OR REPLACE INTO \"" + METADATA_TABLE + "\" (key, value) VALUES (?, ?);",
+			new Object[] { key, value }
+		);
+	}
+
+	private static void _createMetadataTable(SQLiteDatabase db)
+	{
+		db.execSQL("CREATE TABLE IF NOT EXISTS \"" + METADATA_TABLE + "\" ( key TEXT NOT NULL PRIMARY KEY, value TEXT );");
+	}
+
+	private void _applyPageSize(SQLiteDatabase db)
+	{
+		final Integer pageSize = _profile.getPageSize();
+		if (pageSize != null && !db.isReadOnly()) {
+			_pragma(db, "PRAGMA page_size = " + pageSize);
+		}
+	}
+
+	private void _applyWriteAheadLogging(SQLiteDatabase db)
+	{
+		final Boolean writeAheadLogging = _profile.getWriteAheadLogging();
+		if (writeAheadLogging != null && !db.isReadOnly()) {
+			if (writeAheadLogging) {
+				db.enableWriteAheadLogging();
+			} else {
+				db.disableWriteAheadLogging();
+			}
+		}
+	}
+
+	private void _applyPragmas(SQLiteDatabase db)
+	{
+		for (String pragma : _profile.getPragmas()) {
+			_pragma(db, pragma);
+		}
+	}
+
+	/**
+	 * Some pragmas return a row, which execSQL() rejects on newer releases
+	 */
+	private static void _pragma(SQLiteDatabase db, String sql)
+	{
+		Log.d(LOG_TAG, sql);
+
+		final Cursor cursor = db.rawQuery(sql, null);
+		try {
+			cursor.moveToFirst();
+		} finally {
+			cursor.close();
+		}
+	}
+
 	private void _alterTable(SQLiteDatabase db, String tableName, Contract contract)
 	{
 		final Set<String> exists = _getTableColumns(db, tableName);
@@ -223,23 +400,9 @@ public abstract class BaseSQLiteOpenHelper extends SQLiteOpenHelper
 
 		final Contract contract = tableHolder.contract.get();
 
-		final Set<String> exists = _getTableColumns(db, tableName);
-		final Map<String, String> columnsList = contract.getColumnDefaults();
-		final List<String> columnNames = new ArrayList<>(exists.size());
-		final List<String> columnValues = new ArrayList<>(exists.size());
-		for (Map.Entry<String, String> column : columnsList.entrySet()) {
-			if (exists.contains(column.getKey())) {
-				columnNames.add(column.getKey());
-				if (column.getValue() != null) {
-					columnValues.add("IFNULL(\"" + column.getKey() + "\", " + column.getValue() + ")");
-				} else {
-					columnValues.add('"' + column.getKey() + '"');
-				}
-			} else if (column.getValue() != null) {
-				columnNames.add(column.getKey());
-				columnValues.add(column.getValue());
-			}
-		}
+		final List<String> columnNames = new ArrayList<>();
+		final List<String> columnValues = new ArrayList<>();
+		_getCopyColumns(db, tableName, contract, columnNames, columnValues);
 
 		try {
 			db.beginTransaction();
@@ -262,6 +425,7 @@ public abstract class BaseSQLiteOpenHelper extends SQLiteOpenHelper
 			}
 
 			db.execSQL("DROP TABLE \"" + tmpTable + "\";");
+			_createIndexes(db, tableName); // dropped with the old table, onUpgrade() may skip introspection
 
 			db.setTransactionSuccessful();
 		} finally {
@@ -271,4 +435,315 @@ public abstract class BaseSQLiteOpenHelper extends SQLiteOpenHelper
 		return true;
 	}
 
+	/**
+	 * Rebuilds the table like _recreateTable(), but copies rows in _id ranges with a commit after
+	 * every chunk, so the write lock is never held for long. Secondary indexes are dropped for the copy
+	 * and created when it completes. Progress is kept in the metadata table: after process death
+	 * call resumeRebuilds() to continue.
+	 *
+	 * Until completion the table contains only the copied rows, and BaseProvider refuses writes to it
+	 * with IllegalStateException: an update or delete of a row not copied yet would be lost.
+	 * Rows written to the table directly, bypassing the provider, win over the copied ones.
+	 *
+	 * Must not be called inside a transaction, use _startRebuild() from onUpgrade() instead.
+	 *
+	 * @return false for unknown tables
+	 */
+	public boolean rebuildTable(String tableName, int chunkRows, RebuildListener listener)
+	{
+		final SQLiteDatabase db = getWritableDatabase();
+		if (!_getPendingRebuilds(db).containsKey(tableName)) {
+			db.beginTransaction();
+			try {
+				if (!_startRebuild(db, tableName)) {
+					return false;
+				}
+
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+			_rebuilding.add(tableName);
+			_onTableWritten(tableName);
+		}
+
+		_continueRebuild(db, tableName, chunkRows, listener);
+
+		return true;
+	}
+
+	void setWriteListener(WriteListener writeListener)
+	{
+		_writeListener = writeListener;
+	}
+
+	private void _onTableWritten(String tableName)
+	{
+		final WriteListener writeListener = _writeListener;
+		if (writeListener != null) {
+			writeListener.onTableWritten(tableName);
+		}
+	}
+
+	/**
+	 * @return true while a rebuild of the table started and not completed, see rebuildTable()
+	 */
+	public boolean isRebuilding(String tableName)
+	{
+		return _rebuilding.contains(tableName);
+	}
+
+	/**
+	 * Completes rebuilds started by _startRebuild() or interrupted rebuildTable() calls
+	 *
+	 * @return number of completed tables
+	 */
+	public int resumeRebuilds(int chunkRows, RebuildListener listener)
+	{
+		final SQLiteDatabase db = getWritableDatabase();
+		final Set<String> tables = _getPendingRebuilds(db).keySet();
+		for (String tableName : tables) {
+			_continueRebuild(db, tableName, chunkRows, listener);
+		}
+
+		return tables.size();
+	}
+
+	/**
+	 * First, quick, step of a chunked rebuild: moves the table aside, drops its indexes and creates
+	 * the new table. Runs in the current transaction, so it can be used in onUpgrade();
+	 * the copy is done later by resumeRebuilds().
+	 *
+	 * @return false for unknown tables
+	 */
+	protected boolean _startRebuild(SQLiteDatabase db, String tableName)
+	{
+		final BaseStructure.TableHolder tableHolder = _structure.getTableHolders().get(tableName);
+		if (tableHolder == null) {
+			return false;
+		}
+
+		final String sourceTable = tableName + REBUILD_TABLE_SUFFIX;
+
+		db.execSQL("DROP TABLE IF EXISTS \"" + sourceTable + "\";");
+		db.execSQL("ALTER TABLE \"" + tableName + "\" RENAME TO \"" + sourceTable + "\";");
+
+		final List<String> indexes = new ArrayList<>();
+		final Cursor cursor = db.rawQuery(
+			"SELECT name FROM sqlite_master WHERE type = 'index' AND tbl_name = ? AND sql IS NOT NULL;",
+			new String[] { sourceTable }
+		);
+		try {
+			while (cursor.moveToNext()) {
+				indexes.add(cursor.getString(0));
+			}
+		} finally {
+			cursor.close();
+		}
+		for (String index : indexes) {
+			db.execSQL("DROP INDEX \"" + index + "\";");
+		}
+
+		_createTable(db, tableName, tableHolder.contract.get(), tableHolder.pkOnConflict, tableHolder.constraints);
+
+		// rows inserted during the copy must not take ids of rows not copied yet
+		db.execSQL(
+			"INSERT INTO sqlite_sequence (name, seq) SELECT ?, seq FROM sqlite_sequence WHERE name = ?;",
+			new Object[] { tableName, sourceTable }
+		);
+
+		// total is counted by the copy, outside of this transaction
+		_setMetadata(db, KEY_REBUILD_PREFIX + tableName, new RebuildState(Long.MIN_VALUE, 0, -1).toString());
+
+		Log.d(LOG_TAG, "Rebuild of " + tableName + " started");
+
+		return true;
+	}
+
+	private void _continueRebuild(SQLiteDatabase db, String tableName, int chunkRows, RebuildListener listener)
+	{
+		if (chunkRows <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive");
+		}
+
+		final BaseStructure.TableHolder tableHolder = _structure.getTableHolders().get(tableName);
+		if (tableHolder == null) {
+			throw new IllegalStateException("Rebuild of unknown table " + tableName);
+		}
+
+		final String key = KEY_REBUILD_PREFIX + tableName;
+		final String sourceTable = tableName + REBUILD_TABLE_SUFFIX;
+
+		final List<String> columnNames = new ArrayList<>();
+		final List<String> columnValues = new ArrayList<>();
+		_getCopyColumns(db, sourceTable, tableHolder.contract.get(), columnNames, columnValues);
+		// rows written to the new table meanwhile are newer than the copied ones
+		final String copySql = "INSERT OR IGNORE INTO \"" + tableName + "\" (\"" + TextUtils.join("\", \"", columnNames) + "\") "
+			+ "SELECT " + TextUtils.join(", ", columnValues) + " FROM \"" + sourceTable + "\" "
+			+ "WHERE " + BaseColumns.CN_ID + " > ? AND " + BaseColumns.CN_ID + " <= ?;";
+		final String chunkEndSql = "SELECT MAX(" + BaseColumns.CN_ID + "), COUNT(*) FROM ("
+			+ "SELECT " + BaseColumns.CN_ID + " FROM \"" + sourceTable + "\" WHERE " + BaseColumns.CN_ID + " > ? "
+			+ "ORDER BY " + BaseColumns.CN_ID + " LIMIT " + chunkRows + ");";
+
+		// a full scan of the source, read without holding the write lock
+		final long total = _queryLong(db, "SELECT COUNT(*) FROM \"" + sourceTable + "\";", null);
+
+		while (true) {
+			final RebuildState state;
+			db.beginTransaction();
+			try {
+				final RebuildState previous = RebuildState.parse(_getMetadata(db, key));
+				if (previous == null) {
+					_rebuilding.remove(tableName);
+					return; // completed by another caller
+				}
+
+				final Cursor cursor = db.rawQuery(chunkEndSql, new String[] { Long.toString(previous.lastId) });
+				final long rows;
+				final long lastId;
+				try {
+					cursor.moveToFirst();
+					rows = cursor.getLong(1);
+					lastId = (rows > 0 ? cursor.getLong(0) : previous.lastId);
+				} finally {
+					cursor.close();
+				}
+
+				if (rows == 0) {
+					_finishRebuild(db, tableName, sourceTable);
+					db.setTransactionSuccessful();
+					state = null;
+				} else {
+					db.execSQL(copySql, new Object[] { previous.lastId, lastId });
+					state = new RebuildState(lastId, previous.copied + rows, (previous.total >= 0 ? previous.total : total));
+					_setMetadata(db, key, state.toString());
+					db.setTransactionSuccessful();
+				}
+			} finally {
+				db.endTransaction();
+			}
+			_onTableWritten(tableName);
+
+			if (state == null) {
+				_rebuilding.remove(tableName);
+				Log.d(LOG_TAG, "Rebuild of " + tableName + " completed");
+				if (listener != null) {
+					listener.onComplete(tableName);
+				}
+				return;
+			}
+
+			if (listener != null) {
+				listener.onProgress(tableName, state.copied, state.total);
+			}
+		}
+	}
+
+	private void _createIndexes(SQLiteDatabase db, String tableName)
+	{
+		for (BaseStructure.IndexHolder indexHolder : _structure.getIndexHolders()) {
+			if (indexHolder.tableName.equals(tableName)) {
+				final String sql = indexHolder.getDefinition();
+
+				Log.d(LOG_TAG, sql);
+				db.execSQL(sql);
+			}
+		}
+	}
+
+	private void _finishRebuild(SQLiteDatabase db, String tableName, String sourceTable)
+	{
+		db.execSQL("DROP TABLE \"" + sourceTable + "\";");
+		_createIndexes(db, tableName);
+
+		db.delete(METADATA_TABLE, "key = ?", new String[] { KEY_REBUILD_PREFIX + tableName });
+	}
+
+	/**
+	 * @return table name => progress of unfinished rebuilds
+	 */
+	private static Map<String, RebuildState> _getPendingRebuilds(SQLiteDatabase db)
+	{
+		_createMetadataTable(db);
+
+		final Map<String, RebuildState> result = new HashMap<>();
+		final Cursor cursor = db.rawQuery(
+			"SELECT key, value FROM \"" + METADATA_TABLE + "\" WHERE key LIKE ?;",
+			new String[] { KEY_REBUILD_PREFIX + "%" }
+		);
+		try {
+			while (cursor.moveToNext()) {
+				result.put(cursor.getString(0).substring(KEY_REBUILD_PREFIX.length()), RebuildState.parse(cursor.getString(1)));
+			}
+		} finally {
+			cursor.close();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Columns of the contract and expressions to fill them from the source table: existing columns
+	 * with NULLs replaced by defaults, defaults for missing NOT NULL columns
+	 */
+	private void _getCopyColumns(SQLiteDatabase db, String sourceTable, Contract contract, List<String> columnNames, List<String> columnValues)
+	{
+		final Set<String> exists = _getTableColumns(db, sourceTable);
+		final Map<String, String> columnsList = contract.getColumnDefaults();
+		for (Map.Entry<String, String> column : columnsList.entrySet()) {
+			if (exists.contains(column.getKey())) {
+				columnNames.add(column.getKey());
+				if (column.getValue() != null) {
+					columnValues.add("IFNULL(\"" + column.getKey() + "\", " + column.getValue() + ")");
+				} else {
+					columnValues.add('"' + column.getKey() + '"');
+				}
+			} else if (column.getValue() != null) {
+				columnNames.add(column.getKey());
+				columnValues.add(column.getValue());
+			}
+		}
+	}
+
+	private static long _queryLong(SQLiteDatabase db, String sql, String[] args)
+	{
+		final Cursor cursor = db.rawQuery(sql, args);
+		try {
+			return (cursor.moveToFirst() ? cursor.getLong(0) : 0);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private static class RebuildState
+	{
+		final long lastId;
+		final long copied;
+		final long total;
+
+		RebuildState(long lastId, long copied, long total)
+		{
+			this.lastId = lastId;
+			this.copied = copied;
+			this.total = total;
+		}
+
+		static RebuildState parse(String value)
+		{
+			if (value == null) {
+				return null;
+			}
+
+			final String[] parts = value.split(",");
+
+			return new RebuildState(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+		}
+
+		@Override
+		public String toString()
+		{
+			return lastId + "," + copied + "," + total;
+		}
+	}
+
 }
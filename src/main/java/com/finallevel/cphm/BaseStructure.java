@@ -6,20 +6,38 @@ import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
-import android.database.SQLException;
 import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class BaseStructure
 {
 	private static final String LOG_TAG = "BaseStructure";
 
+	// SQLITE_MAX_VARIABLE_NUMBER before SQLite 3.32
+	static final int MAX_SQL_VARIABLES = 999;
+
 	private final Map<Class, ContractHolder> _contracts = new HashMap<>();
 	private final Map<String, TableHolder> _tables = new HashMap<>();
 	private final List<IndexHolder> _indexes = new ArrayList<>();
+	private final Set<String> _unindexedPageOrders = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private volatile ModelCache _modelCache;
+	private volatile Executor _executor;
 
 	public void addTable(String tableName, Class<? extends BaseColumns> contractClass, OnConflict pkOnConflict)
 	{
@@ -48,11 +66,56 @@ public class BaseStructure
 		_indexes.add(new IndexHolder(tableName, unique, columns));
 	}
 
+	/**
+	 * Builds contracts of all registered models, concurrent users wait for the one being built
+	 */
+	public void prewarm()
+	{
+		for (ContractHolder holder : _contracts.values()) {
+			holder.get();
+		}
+	}
+
 	public boolean containsTable(String tableName)
 	{
 		return _tables.containsKey(tableName);
 	}
 
+	/**
+	 * Enables the (table, _id) model cache used by findFirst() for item uris, hits return copies.
+	 * Only exact when the BaseProvider writing the tables runs in this process.
+	 */
+	public void setModelCache(int maxEntries, long maxBytes)
+	{
+		_modelCache = new ModelCache(maxEntries, maxBytes);
+	}
+
+	public void removeModelCache()
+	{
+		_modelCache = null;
+	}
+
+	public ModelCache getModelCache()
+	{
+		return _modelCache;
+	}
+
+	void invalidateModel(String tableName, long id)
+	{
+		final ModelCache modelCache = _modelCache;
+		if (modelCache != null) {
+			modelCache.invalidate(tableName, id);
+		}
+	}
+
+	void invalidateModels(String tableName)
+	{
+		final ModelCache modelCache = _modelCache;
+		if (modelCache != null) {
+			modelCache.invalidate(tableName);
+		}
+	}
+
 	public String[] getProjection(Class<? extends BaseColumns> cls)
 	{
 		final ContractHolder holder = _contracts.get(cls);
@@ -73,6 +136,20 @@ public class BaseStructure
 		return holder.get().getProjection(withTable);
 	}
 
+	/**
+	 * Projection of only some columns of the model. Models read from such cursors
+	 * are populated by column name, other fields keep their default values.
+	 */
+	public String[] getPartialProjection(Class<? extends BaseColumns> cls, String[] columns)
+	{
+		final ContractHolder holder = _contracts.get(cls);
+		if (holder == null) {
+			throw new IllegalArgumentException("Unknown model " + cls);
+		}
+
+		return holder.get().getPartialProjection(columns);
+	}
+
 	public <T extends BaseColumns> T getModel(Class<T> cls, Cursor cursor, int columnsShift)
 	{
 		final ContractHolder holder = _contracts.get(cls);
@@ -82,9 +159,10 @@ public class BaseStructure
 
 		//noinspection TryWithIdenticalCatches
 		try {
-			final T result = cls.newInstance();
+			final Contract contract = holder.get();
+			final T result = cls.cast(contract.newInstance());
 
-			holder.get().populateModel(result, cursor, columnsShift);
+			contract.populateModel(result, cursor, columnsShift);
 
 			return result;
 		} catch (InstantiationException e) {
@@ -98,6 +176,42 @@ public class BaseStructure
 		}
 	}
 
+	public <T extends BaseColumns> Query<T> query(Class<T> cls)
+	{
+		final ContractHolder holder = _contracts.get(cls);
+		if (holder == null) {
+			throw new IllegalArgumentException("Unknown model " + cls);
+		}
+
+		return new Query<>(cls, holder.get());
+	}
+
+	public <T extends BaseColumns> ModelIterator<T> iterate(Cursor cursor, Class<T> cls)
+	{
+		return iterate(cursor, cls, 0, false);
+	}
+
+	/**
+	 * @param flyweight reuse one model instance for all rows
+	 */
+	public <T extends BaseColumns> ModelIterator<T> iterate(Cursor cursor, Class<T> cls, int columnsShift, boolean flyweight)
+	{
+		final ContractHolder holder = _contracts.get(cls);
+		if (holder == null) {
+			throw new IllegalArgumentException("Unknown model " + cls);
+		}
+
+		return new ModelIterator<>(cursor, cls, holder.get(), columnsShift, flyweight);
+	}
+
+	public <T extends BaseColumns> void forEach(Cursor cursor, Class<T> cls, boolean flyweight, ModelIterator.Visitor<? super T> visitor)
+	{
+		final ModelIterator<T> iterator = iterate(cursor, cls, 0, flyweight);
+		while (iterator.hasNext()) {
+			visitor.visit(iterator.next());
+		}
+	}
+
 	public <T extends BaseColumns> ContentValues toContentValues(T model)
 	{
 		return toContentValues(model, null, null);
@@ -120,6 +234,14 @@ public class BaseStructure
 	}
 
 	public <T extends BaseColumns> T findFirst(Uri uri, Class<T> cls, Context context)
+	{
+		return findFirst(uri, cls, null, context);
+	}
+
+	/**
+	 * @param cancellationSignal null or API 16+ signal passed to the provider query
+	 */
+	public <T extends BaseColumns> T findFirst(Uri uri, Class<T> cls, CancellationSignal cancellationSignal, Context context)
 	{
 		final ContractHolder holder = _contracts.get(cls);
 		if (holder == null) {
@@ -128,13 +250,36 @@ public class BaseStructure
 
 		final Contract contract = holder.get();
 
-		final Cursor cursor = context.getContentResolver().query(
-			uri,
-			contract.getProjection(),
-			null,
-			null,
-			null
-		);
+		final ModelCache modelCache = _modelCache;
+		final long cacheId = (modelCache != null ? _getCacheableId(uri) : RouteTable.NO_ID);
+		final long generation;
+		if (cacheId != RouteTable.NO_ID) {
+			final Object cached = modelCache.get(uri.getPathSegments().get(0), cacheId, cls);
+			if (cached != null) {
+				//noinspection TryWithIdenticalCatches
+				try {
+					return cls.cast(contract.copyModel(cached));
+				} catch (InstantiationException e) {
+					Log.w(LOG_TAG, e);
+
+					return null;
+				} catch (IllegalAccessException e) {
+					Log.w(LOG_TAG, e);
+
+					return null;
+				}
+			}
+			generation = modelCache.getGeneration();
+		} else {
+			generation = 0;
+		}
+
+		final Uri limitedUri = (uri.getQueryParameter(BaseProvider.PARAM_LIMIT) == null
+			? uri.buildUpon().appendQueryParameter(BaseProvider.PARAM_LIMIT, "1").build()
+			: uri);
+		final Cursor cursor = (cancellationSignal != null
+			? context.getContentResolver().query(limitedUri, contract.getProjection(), null, null, null, cancellationSignal)
+			: context.getContentResolver().query(limitedUri, contract.getProjection(), null, null, null));
 		if (cursor == null) {
 			return null;
 		}
@@ -146,9 +291,14 @@ public class BaseStructure
 				return null;
 			}
 
-			result = cls.newInstance();
+			result = cls.cast(contract.newInstance());
 
 			contract.populateModel(result, cursor, 0);
+
+			if (cacheId != RouteTable.NO_ID) {
+				final Object copy = contract.copyModel(result);
+				modelCache.put(uri.getPathSegments().get(0), cacheId, copy, contract.estimateSize(copy), generation);
+			}
 		} catch (InstantiationException e) {
 //			e.printStackTrace();
 			return null;
@@ -162,6 +312,466 @@ public class BaseStructure
 		return result;
 	}
 
+	/**
+	 * Executor of the *Async() methods, by default two daemon threads created on first use
+	 */
+	public void setExecutor(Executor executor)
+	{
+		_executor = executor;
+	}
+
+	/**
+	 * findFirst() on the executor. Future.cancel() aborts the running provider query on API 16+.
+	 *
+	 * @param callback null or called on the executor thread unless cancelled
+	 */
+	public <T extends BaseColumns> Future<T> findFirstAsync(
+		final Uri uri,
+		final Class<T> cls,
+		final Context context,
+		Callback<? super T> callback
+	)
+	{
+		final CancellationSignal cancellationSignal = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+			? new CancellationSignal()
+			: null);
+
+		return _execute(new Callable<T>()
+		{
+			@Override
+			public T call()
+			{
+				return findFirst(uri, cls, cancellationSignal, context);
+			}
+		}, cancellationSignal, callback);
+	}
+
+	/**
+	 * create() on the executor. Future.cancel() only prevents a write that has not started yet.
+	 *
+	 * @param callback null or called on the executor thread unless cancelled
+	 */
+	public <T extends BaseColumns> Future<Boolean> createAsync(
+		final Uri uri,
+		final T model,
+		final Context context,
+		Callback<? super Boolean> callback
+	)
+	{
+		return _execute(new Callable<Boolean>()
+		{
+			@Override
+			public Boolean call()
+			{
+				return create(uri, model, context);
+			}
+		}, null, callback);
+	}
+
+	/**
+	 * insertOrUpdate() on the executor. Future.cancel() only prevents a write that has not started yet.
+	 *
+	 * @param callback null or called on the executor thread unless cancelled
+	 */
+	public Future<Boolean> insertOrUpdateAsync(
+		final ContentResolver contentResolver,
+		final Uri contentUri,
+		final ContentValues cv,
+		Callback<? super Boolean> callback
+	)
+	{
+		return _execute(new Callable<Boolean>()
+		{
+			@Override
+			public Boolean call()
+			{
+				return insertOrUpdate(contentResolver, contentUri, cv);
+			}
+		}, null, callback);
+	}
+
+	private <V> Future<V> _execute(Callable<V> callable, CancellationSignal cancellationSignal, Callback<? super V> callback)
+	{
+		final CancellableFuture<V> future = new CancellableFuture<>(callable, cancellationSignal, callback);
+		_getExecutor().execute(future);
+
+		return future;
+	}
+
+	private Executor _getExecutor()
+	{
+		Executor executor = _executor;
+		if (executor == null) {
+			synchronized (this) {
+				executor = _executor;
+				if (executor == null) {
+					final ExecutorService service = Executors.newFixedThreadPool(2, new ThreadFactory()
+					{
+						@Override
+						public Thread newThread(@SuppressWarnings("NullableProblems") Runnable runnable)
+						{
+							final Thread thread = new Thread(runnable, "cphm-async");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+					_executor = executor = service;
+				}
+			}
+		}
+
+		return executor;
+	}
+
+	/**
+	 * Loads models by ids with one "_id IN (...)" query per MAX_SQL_VARIABLES ids
+	 *
+	 * @param uri table uri
+	 * @return models in the order of ids, null for ids that were not found
+	 */
+	public <T extends BaseColumns> List<T> findByIds(Uri uri, long[] ids, Class<T> cls, Context context)
+	{
+		final ContractHolder holder = _contracts.get(cls);
+		if (holder == null) {
+			throw new IllegalArgumentException("Unknown model " + cls);
+		}
+
+		final Contract contract = holder.get();
+		final LongHashMap<T> found = new LongHashMap<>(ids.length);
+		for (int from = 0; from < ids.length; from += MAX_SQL_VARIABLES) {
+			final int to = Math.min(ids.length, from + MAX_SQL_VARIABLES);
+			final String[] args = new String[to - from];
+			final StringBuilder selection = new StringBuilder(BaseColumns.CN_ID).append(" IN (");
+			for (int i = from; i < to; i++) {
+				selection.append(i > from ? ", ?" : "?");
+				args[i - from] = Long.toString(ids[i]);
+			}
+			selection.append(")");
+
+			final Cursor cursor = context.getContentResolver().query(
+				uri,
+				contract.getProjection(),
+				selection.toString(),
+				args,
+				null
+			);
+			if (cursor == null) {
+				continue;
+			}
+
+			try {
+				final ModelIterator<T> iterator = new ModelIterator<>(cursor, cls, contract, 0, false);
+				while (iterator.hasNext()) {
+					final T model = iterator.next();
+					if (model != null) {
+						found.put(cursor.getLong(BaseColumns.CI_ID), model);
+					}
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+
+		final List<T> result = new ArrayList<>(ids.length);
+		for (long id : ids) {
+			result.add(found.get(id));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reads fields marked with @Lazy of the model from contentUri (table uri) by its _id
+	 */
+	public <T extends BaseColumns> boolean loadLazyFields(Uri contentUri, T model, Context context)
+	{
+		return (loadLazyFields(contentUri, Collections.singletonList(model), context) > 0);
+	}
+
+	/**
+	 * Reads fields marked with @Lazy of all models from contentUri (table uri),
+	 * with one query per MAX_SQL_VARIABLES ids
+	 *
+	 * @return number of models loaded
+	 */
+	public <T extends BaseColumns> int loadLazyFields(Uri contentUri, List<T> models, Context context)
+	{
+		if (models.isEmpty()) {
+			return 0;
+		}
+
+		final ContractHolder holder = _contracts.get(models.get(0).getClass());
+		if (holder == null) {
+			throw new IllegalArgumentException("Unknown model " + models.get(0).getClass());
+		}
+
+		final Contract contract = holder.get();
+		if (!contract.hasLazyFields()) {
+			return 0;
+		}
+
+		final Map<Long, List<T>> byId = new HashMap<>(models.size());
+		try {
+			for (T model : models) {
+				final long id = contract.getModelId(model);
+				List<T> list = byId.get(id);
+				if (list == null) {
+					list = new ArrayList<>(1);
+					byId.put(id, list);
+				}
+				list.add(model);
+			}
+		} catch (IllegalAccessException e) {
+			Log.w(LOG_TAG, e);
+
+			return 0;
+		}
+
+		final Long[] ids = byId.keySet().toArray(new Long[byId.size()]);
+		int loaded = 0;
+		for (int from = 0; from < ids.length; from += MAX_SQL_VARIABLES) {
+			final int to = Math.min(ids.length, from + MAX_SQL_VARIABLES);
+			final String[] args = new String[to - from];
+			final StringBuilder selection = new StringBuilder(BaseColumns.CN_ID).append(" IN (");
+			for (int i = from; i < to; i++) {
+				selection.append(i > from ? ", ?" : "?");
+				args[i - from] = ids[i].toString();
+			}
+			selection.append(")");
+
+			final Cursor cursor = context.getContentResolver().query(
+				contentUri,
+				contract.getLazyProjection(),
+				selection.toString(),
+				args,
+				null
+			);
+			if (cursor == null) {
+				continue;
+			}
+
+			try {
+				final int[] columnMapping = contract.getColumnMapping(cursor, 0);
+				while (cursor.moveToNext()) {
+					final List<T> list = byId.get(cursor.getLong(0));
+					if (list == null) {
+						continue;
+					}
+					for (T model : list) {
+						contract.populateModelByName(model, cursor, 0, columnMapping);
+						loaded++;
+					}
+				}
+			} catch (IllegalAccessException e) {
+				Log.w(LOG_TAG, e);
+			} finally {
+				cursor.close();
+			}
+		}
+
+		return loaded;
+	}
+
+	public <T extends BaseColumns> Page<T> findPage(
+		Uri uri,
+		Class<T> cls,
+		Page.Key after,
+		int pageSize,
+		String[] orderColumns,
+		Context context
+	)
+	{
+		return findPage(uri, cls, after, pageSize, orderColumns, false, context);
+	}
+
+	/**
+	 * Keyset pagination: rows after the given key in (orderColumns..., _id) order, found with
+	 * a seek predicate instead of OFFSET, so deep pages cost the same as the first one
+	 * when an addIndex() declaration starts with orderColumns. Order columns must be NOT NULL.
+	 *
+	 * @param uri table uri, a BaseProvider.PARAM_LIMIT below pageSize + 1 hides the last page's next key
+	 * @param pageSize one more row is read to find out whether there is a next page
+	 * @param after null for the first page, Page.next for the following ones
+	 */
+	public <T extends BaseColumns> Page<T> findPage(
+		Uri uri,
+		Class<T> cls,
+		Page.Key after,
+		int pageSize,
+		String[] orderColumns,
+		boolean descending,
+		Context context
+	)
+	{
+		final ContractHolder holder = _contracts.get(cls);
+		if (holder == null) {
+			throw new IllegalArgumentException("Unknown model " + cls);
+		}
+		if (after != null && after.values.length != orderColumns.length) {
+			throw new IllegalArgumentException("Page key does not match order columns");
+		}
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Invalid page size " + pageSize);
+		}
+
+		final String tableName = uri.getPathSegments().get(0);
+		final String order = Arrays.toString(orderColumns);
+		if (!_isIndexed(tableName, orderColumns) && _unindexedPageOrders.add(tableName + order)) {
+			Log.w(LOG_TAG, "No index starts with " + order + " on " + tableName);
+		}
+
+		final String direction = (descending ? " DESC" : " ASC");
+		final StringBuilder sortOrder = new StringBuilder();
+		for (String column : orderColumns) {
+			sortOrder.append('"').append(column).append('"').append(direction).append(", ");
+		}
+		sortOrder.append(BaseColumns.CN_ID).append(direction);
+
+		final String selection;
+		final String[] selectionArgs;
+		if (after != null) {
+			final List<String> args = new ArrayList<>(orderColumns.length * 3 + 1);
+			selection = _getSeekSelection(orderColumns, after, descending ? "<" : ">", args);
+			selectionArgs = args.toArray(new String[args.size()]);
+		} else {
+			selection = null;
+			selectionArgs = null;
+		}
+
+		final Contract contract = holder.get();
+		final Uri limitedUri = (uri.getQueryParameter(BaseProvider.PARAM_LIMIT) == null
+			? uri.buildUpon().appendQueryParameter(BaseProvider.PARAM_LIMIT, String.valueOf(pageSize + 1)).build()
+			: uri);
+		final Cursor cursor = context.getContentResolver().query(
+			limitedUri,
+			contract.getProjection(),
+			selection,
+			selectionArgs,
+			sortOrder.toString()
+		);
+		if (cursor == null) {
+			return new Page<>(Collections.<T>emptyList(), null);
+		}
+
+		final List<T> items = new ArrayList<>(Math.min(cursor.getCount(), pageSize));
+		Page.Key next = null;
+		try {
+			final ModelIterator<T> iterator = new ModelIterator<>(cursor, cls, contract, 0, false);
+			while (items.size() < pageSize && iterator.hasNext()) {
+				items.add(iterator.next());
+			}
+
+			if (cursor.getCount() > pageSize && cursor.moveToPosition(pageSize - 1)) {
+				final Object[] values = new Object[orderColumns.length];
+				for (int i = 0; i < orderColumns.length; i++) {
+					values[i] = _getKeyValue(cursor, cursor.getColumnIndexOrThrow(orderColumns[i]));
+				}
+				next = new Page.Key(values, cursor.getLong(BaseColumns.CI_ID));
+			}
+		} finally {
+			cursor.close();
+		}
+
+		return new Page<>(items, next);
+	}
+
+	/**
+	 * API 11+ keeps INTEGER and REAL values typed, so REAL keys are not rounded by their text form
+	 */
+	private static Object _getKeyValue(Cursor cursor, int index)
+	{
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			switch (cursor.getType(index)) {
+				case Cursor.FIELD_TYPE_INTEGER:
+					return cursor.getLong(index);
+				case Cursor.FIELD_TYPE_FLOAT:
+					return cursor.getDouble(index);
+			}
+		}
+
+		return cursor.getString(index);
+	}
+
+	/**
+	 * "a" >= ? AND ("a" > ? OR ("a" = ? AND ("b" > ? OR ("b" = ? AND _id > ?))))
+	 * The leading condition lets SQLite range scan an index on the first column.
+	 * Numeric key values are bound as CAST(? AS INTEGER / REAL), so they compare as numbers
+	 * whatever the column affinity.
+	 */
+	private static String _getSeekSelection(String[] orderColumns, Page.Key after, String operator, List<String> args)
+	{
+		final StringBuilder builder = new StringBuilder();
+		if (orderColumns.length > 0) {
+			builder.append('"').append(orderColumns[0]).append("\" ").append(operator).append("= ")
+				.append(_getKeyParameter(after.values[0])).append(" AND ");
+			args.add(_getKeyArg(after.values[0]));
+		}
+
+		for (int i = 0; i < orderColumns.length; i++) {
+			final String parameter = _getKeyParameter(after.values[i]);
+			builder.append("(\"").append(orderColumns[i]).append("\" ").append(operator).append(' ').append(parameter)
+				.append(" OR (\"").append(orderColumns[i]).append("\" = ").append(parameter).append(" AND ");
+			args.add(_getKeyArg(after.values[i]));
+			args.add(_getKeyArg(after.values[i]));
+		}
+		builder.append(BaseColumns.CN_ID).append(' ').append(operator).append(" ?");
+		args.add(String.valueOf(after.id));
+		for (int i = 0; i < orderColumns.length; i++) {
+			builder.append("))");
+		}
+
+		return builder.toString();
+	}
+
+	private static String _getKeyParameter(Object value)
+	{
+		if (value instanceof Long) {
+			return "CAST(? AS INTEGER)";
+		} else if (value instanceof Double) {
+			return "CAST(? AS REAL)";
+		}
+
+		return "?";
+	}
+
+	/**
+	 * Double.toString() is the shortest text that parses back to the same double
+	 */
+	private static String _getKeyArg(Object value)
+	{
+		if (value == null) {
+			throw new IllegalArgumentException("Page key contains NULL, order columns must be NOT NULL");
+		}
+
+		return value.toString();
+	}
+
+	private boolean _isIndexed(String tableName, String[] columns)
+	{
+		if (columns.length == 0) {
+			return true;
+		}
+
+		for (IndexHolder index : _indexes) {
+			if (!index.tableName.equals(tableName) || index.columns.length < columns.length) {
+				continue;
+			}
+
+			boolean prefix = true;
+			for (int i = 0; i < columns.length; i++) {
+				if (!index.columns[i].equals(columns[i])) {
+					prefix = false;
+					break;
+				}
+			}
+			if (prefix) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	public <T extends BaseColumns> boolean create(Uri uri, T model, Context context)
 	{
 		final ContractHolder holder = _contracts.get(model.getClass());
@@ -225,6 +835,10 @@ public class BaseStructure
 		return insertOrUpdate(contentResolver, contentUri, cv, null, null);
 	}
 
+	/**
+	 * Inserts the row or, when it conflicts on _id or a UNIQUE constraint, updates it.
+	 * Done by the provider in one statement, see BaseProvider.PARAM_UPSERT.
+	 */
 	public boolean insertOrUpdate(
 		ContentResolver contentResolver,
 		Uri contentUri,
@@ -232,50 +846,111 @@ public class BaseStructure
 		String[] excludeFromUpdate,
 		String[] updateOnly
 	) {
-		try {
-			final Uri uri = contentResolver.insert(contentUri, cv);
-			final long id = ContentUris.parseId(uri);
-			if (id > 0) {
-				return true;
-			}
-		} catch (SQLException ignored) {
+		final Uri uri = contentResolver.insert(getUpsertUri(contentUri, excludeFromUpdate, updateOnly), cv);
+
+		return (uri != null && ContentUris.parseId(uri) > 0);
+	}
+
+	/**
+	 * Batch form of insertOrUpdate(ContentResolver, Uri, ContentValues, String[], String[])
+	 */
+	public void upsert(
+		Collection<ContentProviderOperation> operations,
+		Uri contentUri,
+		ContentValues cv,
+		String[] excludeFromUpdate,
+		String[] updateOnly
+	)
+	{
+		operations.add(
+			ContentProviderOperation.newInsert(getUpsertUri(contentUri, excludeFromUpdate, updateOnly))
+				.withValues(cv)
+				.build()
+		);
+	}
+
+	public static Uri getUpsertUri(Uri contentUri, String[] excludeFromUpdate, String[] updateOnly)
+	{
+		final Uri.Builder builder = contentUri.buildUpon()
+			.appendQueryParameter(BaseProvider.PARAM_UPSERT, "1");
+		if (excludeFromUpdate != null && excludeFromUpdate.length > 0) {
+			builder.appendQueryParameter(BaseProvider.PARAM_EXCLUDE_FROM_UPDATE, TextUtils.join(",", excludeFromUpdate));
+		}
+		if (updateOnly != null) {
+			builder.appendQueryParameter(BaseProvider.PARAM_UPDATE_ONLY, TextUtils.join(",", updateOnly));
 		}
 
-		final Long id = cv.getAsLong(BaseColumns.CN_ID);
-		if (id == null || id <= 0) {
-			return false;
+		return builder.build();
+	}
+
+	/**
+	 * @return id of a plain "table/id" uri or RouteTable.NO_ID when the uri can not be cached
+	 */
+	private long _getCacheableId(Uri uri)
+	{
+		if (uri.getQuery() != null) {
+			return RouteTable.NO_ID;
 		}
 
-		if (excludeFromUpdate != null) {
-			for (String field : excludeFromUpdate) {
-				cv.remove(field);
-			}
+		final List<String> segments = uri.getPathSegments();
+		if (segments.size() != 2 || !_tables.containsKey(segments.get(0))) {
+			return RouteTable.NO_ID;
 		}
 
-		if (updateOnly != null) {
-			final ArrayList<String> keysToRemove = new ArrayList<>(cv.size());
-			Arrays.sort(updateOnly);
-			for (final Map.Entry<String, Object> entry : cv.valueSet()) {
-				final String field = entry.getKey();
-				final int i = Arrays.binarySearch(updateOnly, field);
-				if (i < 0) {
-					keysToRemove.add(field);
-				}
+		try {
+			return Long.parseLong(segments.get(1));
+		} catch (NumberFormatException e) {
+			return RouteTable.NO_ID;
+		}
+	}
+
+	/**
+	 * Stable hash of tables, columns, constraints and indexes: equal fingerprints mean
+	 * BaseSQLiteOpenHelper would generate the same schema
+	 */
+	String getSchemaFingerprint()
+	{
+		final StringBuilder builder = new StringBuilder("v1\n");
+		for (TableHolder table : new TreeMap<>(_tables).values()) {
+			builder.append("table ").append(table.tableName).append(' ').append(table.pkOnConflict).append('\n');
+			for (String column : new TreeMap<>(table.contract.get().getColumnDefinitions()).values()) {
+				builder.append(column).append('\n');
 			}
+			for (ConstraintHolder constraint : table.constraints) {
+				builder.append(constraint.getDefinition()).append('\n');
+			}
+		}
 
-			for (final String field : keysToRemove) {
-				cv.remove(field);
+		final List<String> indexes = new ArrayList<>(_indexes.size());
+		for (IndexHolder index : _indexes) {
+			indexes.add(index.getDefinition());
+		}
+		Collections.sort(indexes);
+		for (String index : indexes) {
+			builder.append(index).append('\n');
+		}
+
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1").digest(builder.toString().getBytes("UTF-8"));
+			final StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
 			}
+
+			return hex.toString();
+		} catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
 		}
+	}
 
-		contentResolver.update(
-				contentUri,
-				cv,
-				BaseColumns.CN_ID + " = " + id,
-				null
-		);
+	Contract getContract(Class cls)
+	{
+		final ContractHolder holder = _contracts.get(cls);
+		if (holder == null) {
+			throw new IllegalArgumentException("Unknown model " + cls);
+		}
 
-		return true;
+		return holder.get();
 	}
 
 	Map<String, TableHolder> getTableHolders()
@@ -312,10 +987,17 @@ public class BaseStructure
 		}
 	}
 
+	public interface Callback<T>
+	{
+		void onResult(T result);
+
+		void onError(Exception e);
+	}
+
 	class ContractHolder
 	{
 		private final Class _class;
-		private Contract _contract;
+		private volatile Contract _contract;
 
 		ContractHolder(Class cls)
 		{
@@ -0,0 +1,61 @@
+package com.finallevel.cphm;
+
+import android.os.CancellationSignal;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Task of the BaseStructure async API: cancel() also cancels the query running in the provider,
+ * the callback gets the outcome on the executor thread unless the task was cancelled
+ */
+class CancellableFuture<V> extends FutureTask<V>
+{
+	private final CancellationSignal _cancellationSignal;
+	private final BaseStructure.Callback<? super V> _callback;
+
+	CancellableFuture(Callable<V> callable, CancellationSignal cancellationSignal, BaseStructure.Callback<? super V> callback)
+	{
+		super(callable);
+
+		_cancellationSignal = cancellationSignal;
+		_callback = callback;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		final boolean cancelled = super.cancel(mayInterruptIfRunning);
+		if (cancelled && _cancellationSignal != null) {
+			_cancellationSignal.cancel();
+		}
+
+		return cancelled;
+	}
+
+	@Override
+	protected void done()
+	{
+		if (_callback == null || isCancelled()) {
+			return;
+		}
+
+		final V result;
+		try {
+			result = get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				_callback.onError((Exception) cause);
+				return;
+			}
+			throw (Error) cause;
+		}
+
+		_callback.onResult(result);
+	}
+}
@@ -0,0 +1,161 @@
+package com.finallevel.cphm;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects changed uris per table and delivers each distinct uri once per flush.
+ * A flush happens at most debounceMillis after the first change, or explicitly at transaction end.
+ * When a table uri is pending, item uris of the same table are dropped, it already covers them.
+ * With debounceMillis = 0 every change is delivered immediately.
+ */
+class ChangeNotifier
+{
+	private final Context _context;
+	private final long _debounceMillis;
+
+	private final Map<String, Set<Uri>> _pending = new LinkedHashMap<>();
+	private final Runnable _flush = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			flush();
+		}
+	};
+
+	private ScheduledExecutorService _executor;
+	private boolean _scheduled;
+	private long _requestedCount;
+	private long _deliveredCount;
+
+	ChangeNotifier(Context context, long debounceMillis)
+	{
+		_context = context;
+		_debounceMillis = debounceMillis;
+	}
+
+	void notifyChange(String table, Uri uri)
+	{
+		if (_debounceMillis <= 0) {
+			synchronized (this) {
+				_requestedCount++;
+				_deliveredCount++;
+			}
+			_deliver(uri);
+			return;
+		}
+
+		synchronized (this) {
+			_requestedCount++;
+
+			Set<Uri> uris = _pending.get(table);
+			if (uris == null) {
+				uris = new LinkedHashSet<>();
+				_pending.put(table, uris);
+			}
+			uris.add(uri.getQuery() != null ? _stripQuery(uri) : uri);
+
+			if (!_scheduled) {
+				_scheduled = true;
+				_getExecutor().schedule(_flush, _debounceMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	void flush()
+	{
+		final List<Uri> uris = new ArrayList<>();
+		synchronized (this) {
+			_scheduled = false;
+			if (_pending.isEmpty()) {
+				return;
+			}
+
+			for (Set<Uri> tableUris : _pending.values()) {
+				Uri tableUri = null;
+				for (Uri uri : tableUris) {
+					if (uri.getPathSegments().size() == 1) {
+						tableUri = uri;
+						break;
+					}
+				}
+
+				if (tableUri != null) {
+					uris.add(tableUri);
+				} else {
+					uris.addAll(tableUris);
+				}
+			}
+			_pending.clear();
+
+			_deliveredCount += uris.size();
+		}
+
+		for (Uri uri : uris) {
+			_deliver(uri);
+		}
+	}
+
+	synchronized long getDeliveredCount()
+	{
+		return _deliveredCount;
+	}
+
+	synchronized long getSuppressedCount()
+	{
+		long pending = 0;
+		for (Set<Uri> uris : _pending.values()) {
+			pending += uris.size();
+		}
+
+		return _requestedCount - _deliveredCount - pending;
+	}
+
+	private void _deliver(Uri uri)
+	{
+		if (_context != null) {
+			final ContentResolver contentResolver = _context.getContentResolver();
+			contentResolver.notifyChange(uri, null);
+		}
+	}
+
+	private ScheduledExecutorService _getExecutor()
+	{
+		if (_executor == null) {
+			_executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(@SuppressWarnings("NullableProblems") Runnable runnable)
+				{
+					final Thread thread = new Thread(runnable, "cphm-notifier");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		return _executor;
+	}
+
+	private static Uri _stripQuery(Uri uri)
+	{
+		return new Uri.Builder()
+			.scheme(uri.getScheme())
+			.encodedAuthority(uri.getEncodedAuthority())
+			.encodedPath(uri.getEncodedPath())
+			.build();
+	}
+}
@@ -2,51 +2,99 @@ package com.finallevel.cphm;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 class Contract
 {
-//	private static final String LOG_TAG = "Contract";
+	private static final String LOG_TAG = "Contract";
+	private static final int MAX_COLUMN_MAPPINGS = 32;
 
+	private final Class<?> _class;
 	private final Field[] _fields;
 	private final String[] _projection;
+	private final int _eagerCount;
+	private final String[] _lazyProjection;
 
-	public Contract(Class cls)
+	private final ModelBinder<Object> _binder;
+	private final int[] _binderColumns;
+
+	private final Map<String, int[]> _columnMappings = new LinkedHashMap<String, int[]>(16, 0.75f, true)
 	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest)
+		{
+			return size() > MAX_COLUMN_MAPPINGS;
+		}
+	};
+	private volatile ColumnMapping _lastColumnMapping;
+
+	public Contract(Class<?> cls)
+	{
+		this(cls, true);
+	}
+
+	public Contract(Class<?> cls, boolean useBinder)
+	{
+		_class = cls;
+
 //		Method f2c = cls.getMethod("fieldToColumnName", String.class);
 //		Log.v(LOG_TAG, f2c.toString());
 
 		final java.lang.reflect.Field[] fields = cls.getFields();
 
 		final List<Field> list = new ArrayList<>(fields.length);
+		final List<Field> lazyList = new ArrayList<>();
 		list.add(null);
 		for (java.lang.reflect.Field f : fields) {
 			final Field field = Field.createNew(f);
 			if (field != null) {
 				if (field.name.equals(BaseColumns.CN_ID)) {
 					list.set(0, field);
+				} else if (field.lazy) {
+					lazyList.add(field);
 				} else {
 					list.add(field);
 				}
 			}
 		}
-		if (list.get(0) == null) {
+		if (list.get(0) == null || list.get(0).lazy) {
 			throw new IllegalArgumentException("Column \"_id\" not exists");
 		}
 
+		// lazy fields go last and are not part of the projection
+		_eagerCount = list.size();
+		list.addAll(lazyList);
+
 		//noinspection ToArrayCallWithZeroLengthArrayArgument
 		_fields = list.toArray(new Field[list.size()]);
 
-		_projection = new String[_fields.length + 1];
-		for (int i = 0; i < _fields.length; i++) {
+		_projection = new String[_eagerCount + 1];
+		for (int i = 0; i < _eagerCount; i++) {
 			_projection[i] = _fields[i].name;
 		}
 		_projection[_projection.length - 1] = "'" + this.hashCode() + "'";
+
+		_lazyProjection = new String[_fields.length - _eagerCount + 1];
+		_lazyProjection[0] = BaseColumns.CN_ID;
+		for (int i = _eagerCount; i < _fields.length; i++) {
+			_lazyProjection[i - _eagerCount + 1] = _fields[i].name;
+		}
+
+		_binder = (useBinder ? _findBinder(cls) : null);
+		_binderColumns = (_binder != null ? _mapBinderColumns(_binder, _fields) : null);
+	}
+
+	public boolean hasBinder()
+	{
+		return (_binderColumns != null);
 	}
 
 	public Iterable<String> getColumnList()
@@ -88,6 +136,19 @@ class Contract
 		return _projection;
 	}
 
+	public boolean hasLazyFields()
+	{
+		return (_eagerCount < _fields.length);
+	}
+
+	/**
+	 * @return _id and all lazy columns
+	 */
+	public String[] getLazyProjection()
+	{
+		return _lazyProjection;
+	}
+
 	public String[] getProjection(String withTable)
 	{
 		final String[] result = new String[_projection.length];
@@ -101,21 +162,160 @@ class Contract
 		return result;
 	}
 
+	/**
+	 * Cursors built with getProjection() are read by position, any other projection
+	 * is mapped to fields by column name. Fields missing in the cursor are left untouched.
+	 */
 	public void populateModel(Object result, Cursor cursor, int columnsShift)
 		throws IllegalAccessException
 	{
-		if (cursor.getInt(columnsShift + _projection.length - 1) != this.hashCode()) {
-			throw new IllegalArgumentException("Use getProjection() as projection");
+		if (isFullProjection(cursor, columnsShift)) {
+			populateModelUnchecked(result, cursor, columnsShift);
+		} else {
+			populateModelByName(result, cursor, columnsShift, getColumnMapping(cursor, columnsShift));
 		}
+	}
 
-		for (int i = 0; i < _fields.length; i++) {
-			_fields[i].set(result, cursor, columnsShift + i);
+	/**
+	 * @return true when the cursor columns starting at columnsShift were selected with getProjection()
+	 */
+	public boolean isFullProjection(Cursor cursor, int columnsShift)
+	{
+		final int sentinel = columnsShift + _projection.length - 1;
+
+		return (
+			sentinel < cursor.getColumnCount()
+				&& _projection[_projection.length - 1].equals(cursor.getColumnName(sentinel))
+		);
+	}
+
+	/**
+	 * @return field index for every cursor column starting at columnsShift, -1 for unknown columns.
+	 * The model's columns end at the first column mapped to an already mapped field, like the _id
+	 * of the next table in a join cursor: it and every later column are -1.
+	 * Computed once per column signature.
+	 */
+	public int[] getColumnMapping(Cursor cursor, int columnsShift)
+	{
+		final String[] names = cursor.getColumnNames();
+
+		final ColumnMapping last = _lastColumnMapping;
+		if (last != null && last.names == names && last.columnsShift == columnsShift) {
+			return last.fields;
+		}
+
+		final StringBuilder key = new StringBuilder().append(columnsShift);
+		for (int i = columnsShift; i < names.length; i++) {
+			key.append(',').append(names[i]);
+		}
+
+		int[] fields;
+		synchronized (_columnMappings) {
+			fields = _columnMappings.get(key.toString());
+			if (fields == null) {
+				fields = new int[names.length - columnsShift];
+				Arrays.fill(fields, -1);
+				final boolean[] mapped = new boolean[_fields.length];
+				for (int i = 0; i < fields.length; i++) {
+					final int field = _getFieldIndex(names[columnsShift + i]);
+					if (field >= 0) {
+						if (mapped[field]) {
+							break;
+						}
+						mapped[field] = true;
+					}
+					fields[i] = field;
+				}
+				_columnMappings.put(key.toString(), fields);
+			}
+		}
+		_lastColumnMapping = new ColumnMapping(names, columnsShift, fields);
+
+		return fields;
+	}
+
+	public void populateModelByName(Object result, Cursor cursor, int columnsShift, int[] columnMapping)
+		throws IllegalAccessException
+	{
+		int lazyCount = 0;
+		for (int i = 0; i < columnMapping.length; i++) {
+			final int field = columnMapping[i];
+			if (field < 0) {
+				continue;
+			} else if (field >= _eagerCount) {
+				lazyCount++;
+			}
+
+			if (_binderColumns != null) {
+				_binder.set(result, _binderColumns[field], cursor, columnsShift + i);
+			} else {
+				_fields[field].set(result, cursor, columnsShift + i);
+			}
+		}
+		_setLazyFieldsSkipped(result, lazyCount < _fields.length - _eagerCount);
+	}
+
+	/**
+	 * @return projection of the given columns, for models hydrated by name
+	 */
+	public String[] getPartialProjection(String[] columns)
+	{
+		for (String column : columns) {
+			if (_getFieldIndex(column) < 0) {
+				throw new IllegalArgumentException("Unknown column " + column);
+			}
+		}
+
+		return columns.clone();
+	}
+
+	/**
+	 * populateModel() for cursors already checked with isFullProjection()
+	 */
+	public void populateModelUnchecked(Object result, Cursor cursor, int columnsShift)
+		throws IllegalAccessException
+	{
+		if (_binderColumns != null) {
+			for (int i = 0; i < _eagerCount; i++) {
+				_binder.set(result, _binderColumns[i], cursor, columnsShift + i);
+			}
+		} else {
+			for (int i = 0; i < _eagerCount; i++) {
+				_fields[i].set(result, cursor, columnsShift + i);
+			}
+		}
+		_setLazyFieldsSkipped(result, _eagerCount < _fields.length);
+	}
+
+	public Object newInstance()
+		throws InstantiationException, IllegalAccessException
+	{
+		if (_binderColumns != null) {
+			return _binder.newInstance();
+		}
+
+		return _class.newInstance();
+	}
+
+	/**
+	 * @return new instance with the fields of model
+	 */
+	public Object copyModel(Object model)
+		throws InstantiationException, IllegalAccessException
+	{
+		final Object result = newInstance();
+		for (Field field : _fields) {
+			field.copy(model, result);
 		}
+		_setLazyFieldsSkipped(result, _isLazyFieldsSkipped(model));
+
+		return result;
 	}
 
 	public ContentValues toContentValues(Object model, Collection<String> exclude, Collection<String> only)
 		throws IllegalAccessException
 	{
+		final boolean lazySkipped = _isLazyFieldsSkipped(model);
 		final ContentValues cv;
 		if (exclude != null || only != null) {
 			if (only != null) {
@@ -124,20 +324,26 @@ class Contract
 				cv = new ContentValues(_fields.length - exclude.size() + 1);
 			}
 
-			for (Field field : _fields) {
+			for (int i = 0; i < _fields.length; i++) {
+				final Field field = _fields[i];
 				if (exclude != null && exclude.contains(field.name)) {
 					continue;
 				} else if (only != null && !only.contains(field.name)) {
 					continue;
+				} else if (field.lazy && lazySkipped && field.isNull(model)) {
+					continue;
 				}
 
-				field.getContentValue(model, cv);
+				_getContentValue(model, i, cv);
 			}
 		} else {
 			cv = new ContentValues(_fields.length + 1);
 
-			for (Field field : _fields) {
-				field.getContentValue(model, cv);
+			for (int i = 0; i < _fields.length; i++) {
+				if (i >= _eagerCount && lazySkipped && _fields[i].isNull(model)) {
+					continue; // not loaded lazy field
+				}
+				_getContentValue(model, i, cv);
 			}
 		}
 
@@ -147,13 +353,132 @@ class Contract
 	public void setModelId(Object model, long id)
 		throws IllegalAccessException
 	{
-		_fields[0].set(model, id);
+		if (_binderColumns != null) {
+			_binder.setId(model, id);
+		} else {
+			_fields[0].set(model, id);
+		}
 	}
 
 	public long getModelId(Object model)
 		throws IllegalAccessException
 	{
+		if (_binderColumns != null) {
+			return _binder.getId(model);
+		}
+
 		return _fields[0].getLong(model);
 	}
 
+	/**
+	 * @return approximate heap size of the model in bytes
+	 */
+	public int estimateSize(Object model)
+		throws IllegalAccessException
+	{
+		int size = 16;
+		for (Field field : _fields) {
+			size += field.estimateSize(model);
+		}
+
+		return size;
+	}
+
+	private static boolean _isLazyFieldsSkipped(Object model)
+	{
+		return (model instanceof BaseColumns && ((BaseColumns) model).lazyFieldsSkipped);
+	}
+
+	private static void _setLazyFieldsSkipped(Object model, boolean skipped)
+	{
+		if (model instanceof BaseColumns) {
+			((BaseColumns) model).lazyFieldsSkipped = skipped;
+		}
+	}
+
+	private void _getContentValue(Object model, int i, ContentValues cv)
+		throws IllegalAccessException
+	{
+		if (_binderColumns != null) {
+			_binder.getContentValue(model, _binderColumns[i], cv);
+		} else {
+			_fields[i].getContentValue(model, cv);
+		}
+	}
+
+	public boolean hasColumn(String name)
+	{
+		return (_getFieldIndex(name) >= 0);
+	}
+
+	private int _getFieldIndex(String name)
+	{
+		for (int i = 0; i < _fields.length; i++) {
+			if (_fields[i].name.equals(name)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * The binder is generated for cls, so it accepts every model this contract is given
+	 */
+	@SuppressWarnings("unchecked")
+	private static ModelBinder<Object> _findBinder(Class<?> cls)
+	{
+		try {
+			return (ModelBinder<Object>) Class.forName(cls.getName() + ModelBinder.SUFFIX, true, cls.getClassLoader()).newInstance();
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (Exception e) {
+			Log.w(LOG_TAG, e);
+
+			return null;
+		}
+	}
+
+	private static int[] _mapBinderColumns(ModelBinder<?> binder, Field[] fields)
+	{
+		final String[] columns = binder.getColumns();
+		if (columns.length != fields.length) {
+			Log.w(LOG_TAG, "Binder " + binder.getClass().getName() + " does not match model, using reflection");
+
+			return null;
+		}
+
+		final Map<String, Integer> positions = new HashMap<>(columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			positions.put(columns[i], i);
+		}
+
+		final int[] result = new int[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			final Integer position = positions.get(fields[i].name);
+			if (position == null) {
+				Log.w(LOG_TAG, "Binder " + binder.getClass().getName() + " does not match model, using reflection");
+
+				return null;
+			}
+			result[i] = position;
+		}
+
+		return result;
+	}
+
+	private static class ColumnMapping
+	{
+		final String[] names;
+		final int columnsShift;
+		final int[] fields;
+
+		ColumnMapping(String[] names, int columnsShift, int[] fields)
+		{
+			this.names = names;
+			this.columnsShift = columnsShift;
+			this.fields = fields;
+		}
+	}
+
 }
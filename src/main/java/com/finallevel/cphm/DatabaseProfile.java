@@ -0,0 +1,173 @@
+package com.finallevel.cphm;
+
+/**
+ * Connection settings applied by BaseSQLiteOpenHelper every time the database is opened.
+ * Unset values keep the SQLite / Android defaults.
+ *
+ * WAL and page size belong to the database file. synchronous, cache_size, mmap_size and temp_store
+ * belong to a connection and are set on the primary one, which runs every write and every statement
+ * inside a transaction. With WAL, Android runs other queries on a pool of read connections that no
+ * public API configures, so those keep the defaults: the read side settings only reliably apply
+ * without WAL or to reads made inside a transaction.
+ *
+ * <pre>
+ * new DatabaseProfile()
+ * 	.setWriteAheadLogging(true)
+ * 	.setSynchronous(DatabaseProfile.Synchronous.NORMAL)
+ * </pre>
+ */
+public class DatabaseProfile
+{
+	public enum Synchronous
+	{
+		OFF, NORMAL, FULL, EXTRA,
+	}
+
+	public enum TempStore
+	{
+		DEFAULT, FILE, MEMORY,
+	}
+
+	private Boolean _writeAheadLogging;
+	private Synchronous _synchronous;
+	private Integer _cacheSize;
+	private Long _mmapSize;
+	private TempStore _tempStore;
+	private Integer _pageSize;
+
+	/**
+	 * WAL lets readers run while a writer is active. Requires API 11, ignored below.
+	 */
+	public DatabaseProfile setWriteAheadLogging(boolean enabled)
+	{
+		_writeAheadLogging = enabled;
+
+		return this;
+	}
+
+	/**
+	 * NORMAL is durable enough with WAL: a power loss may roll back the last commits, never corrupt
+	 */
+	public DatabaseProfile setSynchronous(Synchronous synchronous)
+	{
+		_synchronous = synchronous;
+
+		return this;
+	}
+
+	/**
+	 * Primary connection only, see the class description
+	 *
+	 * @param cacheSize pages when positive, KiB when negative (as PRAGMA cache_size)
+	 */
+	public DatabaseProfile setCacheSize(int cacheSize)
+	{
+		_cacheSize = cacheSize;
+
+		return this;
+	}
+
+	/**
+	 * Bytes of the file to memory-map, 0 disables. Ignored by SQLite before 3.7.17 (API 21).
+	 * Primary connection only, see the class description.
+	 */
+	public DatabaseProfile setMmapSize(long mmapSize)
+	{
+		if (mmapSize < 0) {
+			throw new IllegalArgumentException("Negative mmap size " + mmapSize);
+		}
+		_mmapSize = mmapSize;
+
+		return this;
+	}
+
+	/**
+	 * Primary connection only, see the class description
+	 */
+	public DatabaseProfile setTempStore(TempStore tempStore)
+	{
+		_tempStore = tempStore;
+
+		return this;
+	}
+
+	/**
+	 * Only takes effect when the database file is created. BaseSQLiteOpenHelper sets it before
+	 * switching to WAL, a file already in WAL mode keeps its page size.
+	 *
+	 * @param pageSize power of two between 512 and 65536
+	 */
+	public DatabaseProfile setPageSize(int pageSize)
+	{
+		if (pageSize < 512 || pageSize > 65536 || (pageSize & (pageSize - 1)) != 0) {
+			throw new IllegalArgumentException("Invalid page size " + pageSize);
+		}
+		_pageSize = pageSize;
+
+		return this;
+	}
+
+	public Boolean getWriteAheadLogging()
+	{
+		return _writeAheadLogging;
+	}
+
+	public Synchronous getSynchronous()
+	{
+		return _synchronous;
+	}
+
+	public Integer getCacheSize()
+	{
+		return _cacheSize;
+	}
+
+	public Long getMmapSize()
+	{
+		return _mmapSize;
+	}
+
+	public TempStore getTempStore()
+	{
+		return _tempStore;
+	}
+
+	public Integer getPageSize()
+	{
+		return _pageSize;
+	}
+
+	/**
+	 * @return PRAGMA statements for the primary connection, without journal mode and page size
+	 */
+	String[] getPragmas()
+	{
+		final String[] pragmas = new String[4];
+		int count = 0;
+		if (_synchronous != null) {
+			pragmas[count++] = "PRAGMA synchronous = " + _synchronous.name();
+		}
+		if (_cacheSize != null) {
+			pragmas[count++] = "PRAGMA cache_size = " + _cacheSize;
+		}
+		if (_mmapSize != null) {
+			pragmas[count++] = "PRAGMA mmap_size = " + _mmapSize;
+		}
+		if (_tempStore != null) {
+			pragmas[count++] = "PRAGMA temp_store = " + _tempStore.name();
+		}
+
+		final String[] result = new String[count];
+		System.arraycopy(pragmas, 0, result, 0, count);
+
+		return result;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "DatabaseProfile[wal=" + _writeAheadLogging + ", synchronous=" + _synchronous
+			+ ", cacheSize=" + _cacheSize + ", mmapSize=" + _mmapSize
+			+ ", tempStore=" + _tempStore + ", pageSize=" + _pageSize + "]";
+	}
+}
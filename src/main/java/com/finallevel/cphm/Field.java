@@ -55,6 +55,7 @@ class Field
 	};
 
 	public String name;
+	public boolean lazy;
 
 	private int _type;
 //	public boolean notNull;
@@ -118,6 +119,13 @@ class Field
 		result.name = field.getName();
 		result._field = field;
 
+		if (field.isAnnotationPresent(Lazy.class)) {
+			if (result._type != TYPE_STRING && result._type != TYPE_BLOB) {
+				throw new IllegalArgumentException("Only String and byte[] fields can be lazy: " + result.name);
+			}
+			result.lazy = true;
+		}
+
 //		Log.d(LOG_TAG, "Name: " + result.name + "; Type: " + result._type + "; NotNull: " + result.notNull);
 
 		return result;
@@ -294,6 +302,22 @@ class Field
 		}
 	}
 
+	/**
+	 * Copies the value, blobs are cloned so the two models share nothing mutable
+	 */
+	public void copy(Object from, Object to)
+		throws IllegalAccessException
+	{
+		final Object val = _field.get(from);
+		_field.set(to, (_type == TYPE_BLOB && val != null ? ((byte[]) val).clone() : val));
+	}
+
+	public boolean isNull(Object model)
+		throws IllegalAccessException
+	{
+		return (_field.get(model) == null);
+	}
+
 	public Long getLong(Object model)
 		throws IllegalAccessException
 	{
@@ -343,6 +367,34 @@ class Field
 		}
 	}
 
+	/**
+	 * @return approximate heap size of the field value in bytes
+	 */
+	public int estimateSize(Object model)
+		throws IllegalAccessException
+	{
+		switch (_type) {
+			case TYPE_STRING: {
+				final String val = (String) _field.get(model);
+				return (val == null ? 4 : 4 + 40 + 2 * val.length());
+			}
+			case TYPE_BLOB: {
+				final byte[] val = (byte[]) _field.get(model);
+				return (val == null ? 4 : 4 + 16 + val.length);
+			}
+			case TYPE_INT:
+			case TYPE_FLOAT:
+			case TYPE_BYTE:
+			case TYPE_BOOLEAN:
+				return 4;
+			case TYPE_LONG:
+			case TYPE_DOUBLE:
+				return 8;
+			default:
+				return 4 + 16; // boxed value
+		}
+	}
+
 	public String getDefaults()
 	{
 		return DEFAULTS[_type];
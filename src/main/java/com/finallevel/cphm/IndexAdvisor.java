@@ -0,0 +1,356 @@
+package com.finallevel.cphm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Workload driven index advice: BaseProvider.query() reports every query it runs against SQLite,
+ * the advisor counts how often each query shape and each WHERE, JOIN ON (BaseProvider.PARAM_JOIN_ON)
+ * and ORDER BY column appears. From these counts it proposes composite indexes ranked by the number
+ * of queries they would serve, and lists declared indexes no query uses, which only slow down writes.
+ * Returned by BaseProvider.getIndexAdvisor(), null (disabled) by default.
+ *
+ * Queries answered by the query cache never reach SQLite and are not counted.
+ */
+public class IndexAdvisor
+{
+	private final int _maxShapes;
+	private final Map<String, ShapeCount> _shapes = new HashMap<>();
+	private long _droppedCount;
+
+	/**
+	 * @param maxShapes shapes seen after this many are only counted by getDroppedCount(),
+	 * selections with inlined values make a new shape for every value
+	 */
+	public IndexAdvisor(int maxShapes)
+	{
+		_maxShapes = maxShapes;
+	}
+
+	void record(BaseStructure structure, String from, String[] tables, String selection, String[] joinOn, String sortOrder)
+	{
+		final String key = from + '\u0000' + selection + '\u0000' + sortOrder;
+
+		synchronized (this) {
+			final ShapeCount count = _shapes.get(key);
+			if (count != null) {
+				count.count++;
+				return;
+			}
+			if (_shapes.size() >= _maxShapes) {
+				_droppedCount++;
+				return;
+			}
+		}
+
+		final ShapeCount count = new ShapeCount(new QueryShape(structure, tables, selection, joinOn, sortOrder));
+		synchronized (this) {
+			final ShapeCount previous = _shapes.get(key);
+			if (previous != null) {
+				previous.count++;
+			} else {
+				_shapes.put(key, count);
+			}
+		}
+	}
+
+	/**
+	 * @return number of queries not counted because maxShapes was reached
+	 */
+	public synchronized long getDroppedCount()
+	{
+		return _droppedCount;
+	}
+
+	/**
+	 * @return how often every column of a registered table appeared in WHERE, JOIN ON and ORDER BY,
+	 * most used first
+	 */
+	public synchronized List<ColumnUsage> getColumnUsages()
+	{
+		final Map<String, ColumnUsage> usages = new LinkedHashMap<>();
+		for (ShapeCount shape : _shapes.values()) {
+			for (QueryShape.Usage usage : shape.shape.usages.values()) {
+				for (String column : usage.equality) {
+					_getColumnUsage(usages, usage.table, column).where += shape.count;
+				}
+				for (String column : usage.range) {
+					_getColumnUsage(usages, usage.table, column).where += shape.count;
+				}
+				for (String column : usage.join) {
+					_getColumnUsage(usages, usage.table, column).join += shape.count;
+				}
+				for (String column : usage.order) {
+					_getColumnUsage(usages, usage.table, column).orderBy += shape.count;
+				}
+			}
+		}
+
+		final List<ColumnUsage> result = new ArrayList<>(usages.values());
+		Collections.sort(result, new Comparator<ColumnUsage>()
+		{
+			@Override
+			public int compare(ColumnUsage a, ColumnUsage b)
+			{
+				return Long.compare(b.getTotal(), a.getTotal());
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Candidates are the index columns of every shape (equality and join columns, then one range
+	 * or the order columns). A candidate that is a prefix of a longer one is merged into it.
+	 * Shapes already served by a declared index starting with the same columns are skipped.
+	 *
+	 * @return suggested indexes, the ones serving most queries first
+	 */
+	public List<Candidate> getSuggestions(BaseStructure structure)
+	{
+		final Map<IndexSuggestion, Candidate> candidates = new HashMap<>();
+		synchronized (this) {
+			for (ShapeCount shape : _shapes.values()) {
+				for (QueryShape.Usage usage : shape.shape.usages.values()) {
+					final String[] columns = usage.getIndexColumns();
+					if (columns == null) {
+						continue;
+					}
+
+					final IndexSuggestion index = new IndexSuggestion(usage.table, columns);
+					if (index.isDeclared(structure)) {
+						continue;
+					}
+
+					Candidate candidate = candidates.get(index);
+					if (candidate == null) {
+						candidate = new Candidate(index);
+						candidates.put(index, candidate);
+					}
+					candidate.queries += shape.count;
+					candidate.shapes++;
+				}
+			}
+		}
+
+		final List<Candidate> result = new ArrayList<>(candidates.values());
+		// longest first, so every candidate is merged into the longest one it prefixes
+		Collections.sort(result, new Comparator<Candidate>()
+		{
+			@Override
+			public int compare(Candidate a, Candidate b)
+			{
+				return b.index.columns.length - a.index.columns.length;
+			}
+		});
+		for (int i = result.size() - 1; i >= 0; i--) {
+			final Candidate candidate = result.get(i);
+			for (int j = 0; j < i; j++) {
+				final Candidate longer = result.get(j);
+				if (longer.index.columns.length > candidate.index.columns.length && _isPrefix(candidate.index, longer.index)) {
+					longer.queries += candidate.queries;
+					longer.shapes += candidate.shapes;
+					result.remove(i);
+					break;
+				}
+			}
+		}
+
+		Collections.sort(result, new Comparator<Candidate>()
+		{
+			@Override
+			public int compare(Candidate a, Candidate b)
+			{
+				final int byQueries = Long.compare(b.queries, a.queries);
+
+				return (byQueries != 0 ? byQueries : a.index.columns.length - b.index.columns.length);
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * UNIQUE indexes enforce constraints and are never reported
+	 *
+	 * @return declared non unique indexes whose first column no recorded query filters, joins or sorts on
+	 */
+	public List<IndexSuggestion> getUnusedIndexes(BaseStructure structure)
+	{
+		final List<IndexSuggestion> result = new ArrayList<>();
+		synchronized (this) {
+			for (BaseStructure.IndexHolder index : structure.getIndexHolders()) {
+				if (index.unique || _isUsed(index)) {
+					continue;
+				}
+				result.add(new IndexSuggestion(index.tableName, index.columns));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return column usage, ranked addIndex() calls to add and unused ones to remove
+	 */
+	public String dump(BaseStructure structure)
+	{
+		final StringBuilder builder = new StringBuilder();
+
+		builder.append("// column usage: where / join / order by\n");
+		for (ColumnUsage usage : getColumnUsages()) {
+			builder.append("//   ").append(usage).append('\n');
+		}
+
+		builder.append("// suggested indexes: queries served\n");
+		for (Candidate candidate : getSuggestions(structure)) {
+			builder.append(candidate.index.toCode()).append(" // ").append(candidate.queries).append('\n');
+		}
+
+		builder.append("// unused indexes, remove:\n");
+		for (IndexSuggestion index : getUnusedIndexes(structure)) {
+			builder.append("// ").append(index.toCode()).append('\n');
+		}
+
+		final long dropped = getDroppedCount();
+		if (dropped > 0) {
+			builder.append("// ").append(dropped).append(" queries not counted, raise maxShapes\n");
+		}
+
+		return builder.toString();
+	}
+
+	public synchronized void clear()
+	{
+		_shapes.clear();
+		_droppedCount = 0;
+	}
+
+	private boolean _isUsed(BaseStructure.IndexHolder index)
+	{
+		for (ShapeCount shape : _shapes.values()) {
+			final QueryShape.Usage usage = shape.shape.usages.get(index.tableName);
+			if (usage != null && usage.isServedBy(index.columns)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean _isPrefix(IndexSuggestion prefix, IndexSuggestion index)
+	{
+		if (!prefix.table.equals(index.table)) {
+			return false;
+		}
+		for (int i = 0; i < prefix.columns.length; i++) {
+			if (!prefix.columns[i].equals(index.columns[i])) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static ColumnUsage _getColumnUsage(Map<String, ColumnUsage> usages, String table, String column)
+	{
+		final String key = table + '.' + column;
+		ColumnUsage usage = usages.get(key);
+		if (usage == null) {
+			usage = new ColumnUsage(table, column);
+			usages.put(key, usage);
+		}
+
+		return usage;
+	}
+
+	private static class ShapeCount
+	{
+		final QueryShape shape;
+		long count = 1;
+
+		ShapeCount(QueryShape shape)
+		{
+			this.shape = shape;
+		}
+	}
+
+	public static class ColumnUsage
+	{
+		public final String table;
+		public final String column;
+
+		long where;
+		long join;
+		long orderBy;
+
+		ColumnUsage(String table, String column)
+		{
+			this.table = table;
+			this.column = column;
+		}
+
+		public long getWhereCount()
+		{
+			return where;
+		}
+
+		public long getJoinCount()
+		{
+			return join;
+		}
+
+		public long getOrderByCount()
+		{
+			return orderBy;
+		}
+
+		public long getTotal()
+		{
+			return where + join + orderBy;
+		}
+
+		@Override
+		public String toString()
+		{
+			return table + "." + column + ": " + where + " / " + join + " / " + orderBy;
+		}
+	}
+
+	public static class Candidate
+	{
+		public final IndexSuggestion index;
+
+		long queries;
+		int shapes;
+
+		Candidate(IndexSuggestion index)
+		{
+			this.index = index;
+		}
+
+		/**
+		 * @return estimated benefit: recorded queries the index would serve
+		 */
+		public long getQueryCount()
+		{
+			return queries;
+		}
+
+		public int getShapeCount()
+		{
+			return shapes;
+		}
+
+		@Override
+		public String toString()
+		{
+			return index.toCode() + " // " + queries + " queries, " + shapes + " shapes";
+		}
+	}
+}
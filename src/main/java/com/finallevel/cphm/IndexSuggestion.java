@@ -0,0 +1,66 @@
+package com.finallevel.cphm;
+
+import android.text.TextUtils;
+
+import java.util.Arrays;
+
+/**
+ * Index that would serve a query shape, printable as the BaseStructure.addIndex() call declaring it
+ */
+public class IndexSuggestion
+{
+	public final String table;
+	public final String[] columns;
+
+	IndexSuggestion(String table, String[] columns)
+	{
+		this.table = table;
+		this.columns = columns;
+	}
+
+	/**
+	 * @return true when an index of the structure starts with the same columns
+	 */
+	public boolean isDeclared(BaseStructure structure)
+	{
+		for (BaseStructure.IndexHolder index : structure.getIndexHolders()) {
+			if (index.tableName.equals(table) && index.columns.length >= columns.length
+				&& Arrays.asList(index.columns).subList(0, columns.length).equals(Arrays.asList(columns))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return addIndex("table", false, new String[] { "a", "b" });
+	 */
+	public String toCode()
+	{
+		return "addIndex(\"" + table + "\", false, new String[] { \"" + TextUtils.join("\", \"", columns) + "\" });";
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (!(o instanceof IndexSuggestion)) {
+			return false;
+		}
+
+		final IndexSuggestion suggestion = (IndexSuggestion) o;
+		return table.equals(suggestion.table) && Arrays.equals(columns, suggestion.columns);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return 31 * table.hashCode() + Arrays.hashCode(columns);
+	}
+
+	@Override
+	public String toString()
+	{
+		return toCode();
+	}
+}
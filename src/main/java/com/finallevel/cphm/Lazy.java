@@ -0,0 +1,19 @@
+package com.finallevel.cphm;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a String (TEXT) or byte[] (BLOB) model field as lazy: it stays in the table but is
+ * left out of getProjection() and is read with BaseStructure.loadLazyFields() when needed.
+ * Loading is explicit, nothing is fetched on first access. While a model read without its
+ * lazy columns has not been through loadLazyFields(), its null lazy fields are not written by
+ * toContentValues(), so saving it does not clear them; once loaded, null is written as NULL.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Lazy
+{
+}
@@ -0,0 +1,105 @@
+package com.finallevel.cphm;
+
+import java.util.Arrays;
+
+/**
+ * Minimal open addressing long => V map without boxing, sized up front for a known number of keys.
+ * android.util.LongSparseArray needs API 16 and is O(log n) per lookup.
+ */
+class LongHashMap<V>
+{
+	private long[] _keys;
+	private Object[] _values;
+	private boolean[] _used;
+	private int _size;
+
+	LongHashMap(int expectedSize)
+	{
+		int capacity = 4;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+
+		_keys = new long[capacity];
+		_values = new Object[capacity];
+		_used = new boolean[capacity];
+	}
+
+	/**
+	 * _values only holds what put() stored, so every element is a V
+	 */
+	@SuppressWarnings("unchecked")
+	V get(long key)
+	{
+		final int mask = _keys.length - 1;
+		for (int i = _hash(key) & mask; _used[i]; i = (i + 1) & mask) {
+			if (_keys[i] == key) {
+				return (V) _values[i];
+			}
+		}
+
+		return null;
+	}
+
+	void put(long key, V value)
+	{
+		if ((_size + 1) * 2 > _keys.length) {
+			_grow();
+		}
+
+		final int mask = _keys.length - 1;
+		int i = _hash(key) & mask;
+		for (; _used[i]; i = (i + 1) & mask) {
+			if (_keys[i] == key) {
+				_values[i] = value;
+				return;
+			}
+		}
+
+		_used[i] = true;
+		_keys[i] = key;
+		_values[i] = value;
+		_size++;
+	}
+
+	int size()
+	{
+		return _size;
+	}
+
+	void clear()
+	{
+		Arrays.fill(_used, false);
+		Arrays.fill(_values, null);
+		_size = 0;
+	}
+
+	/**
+	 * Same as get(): the old _values only holds V
+	 */
+	@SuppressWarnings("unchecked")
+	private void _grow()
+	{
+		final long[] keys = _keys;
+		final Object[] values = _values;
+		final boolean[] used = _used;
+
+		_keys = new long[keys.length * 2];
+		_values = new Object[keys.length * 2];
+		_used = new boolean[keys.length * 2];
+		_size = 0;
+
+		for (int i = 0; i < keys.length; i++) {
+			if (used[i]) {
+				put(keys[i], (V) values[i]);
+			}
+		}
+	}
+
+	private static int _hash(long key)
+	{
+		final long h = key * 0x9E3779B97F4A7C15L;
+
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,25 @@
+package com.finallevel.cphm;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/**
+ * Typed accessors for one model class, generated at compile time by cphm-processor
+ * as {@code <ModelClass>$$CphmBinder}. When it is absent Contract falls back to reflection.
+ */
+public interface ModelBinder<T>
+{
+	String SUFFIX = "$$CphmBinder";
+
+	String[] getColumns();
+
+	T newInstance();
+
+	void set(T model, int column, Cursor cursor, int position);
+
+	void getContentValue(T model, int column, ContentValues contentValues);
+
+	long getId(T model);
+
+	void setId(T model, long id);
+}
@@ -0,0 +1,206 @@
+package com.finallevel.cphm;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Models loaded by BaseStructure.findFirst(), keyed by (table, _id). The cache keeps its own
+ * copies and findFirst() returns a new copy on every hit, so callers may modify what they get.
+ * Bounded by entry count and approximate byte size, least recently used entries are evicted first.
+ * Entries are invalidated by BaseProvider writes, so it is only exact when the provider
+ * runs in the same process as the BaseStructure that owns the cache.
+ */
+public class ModelCache
+{
+	private final int _maxEntries;
+	private final long _maxBytes;
+	private final LinkedHashMap<Key, Entry> _entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long _bytes;
+	private long _generation;
+	private long _hitCount;
+	private long _missCount;
+	private long _putCount;
+	private long _evictionCount;
+	private long _invalidationCount;
+
+	ModelCache(int maxEntries, long maxBytes)
+	{
+		if (maxEntries <= 0 || maxBytes <= 0) {
+			throw new IllegalArgumentException("Model cache limits must be positive");
+		}
+
+		_maxEntries = maxEntries;
+		_maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return cached model, null when absent or not a cls instance; both count as a miss
+	 */
+	synchronized Object get(String table, long id, Class<?> cls)
+	{
+		final Entry entry = _entries.get(new Key(table, id));
+		if (entry == null || !cls.isInstance(entry.model)) {
+			_missCount++;
+			return null;
+		}
+
+		_hitCount++;
+		return entry.model;
+	}
+
+	/**
+	 * Taken before a model is loaded; put() drops the model when anything was invalidated meanwhile
+	 */
+	synchronized long getGeneration()
+	{
+		return _generation;
+	}
+
+	synchronized void put(String table, long id, Object model, int bytes, long generation)
+	{
+		if (generation != _generation || bytes > _maxBytes) {
+			return;
+		}
+
+		final Entry previous = _entries.put(new Key(table, id), new Entry(model, bytes));
+		if (previous != null) {
+			_bytes -= previous.bytes;
+		}
+		_bytes += bytes;
+		_putCount++;
+
+		final Iterator<Entry> iterator = _entries.values().iterator();
+		while ((_entries.size() > _maxEntries || _bytes > _maxBytes) && iterator.hasNext()) {
+			_bytes -= iterator.next().bytes;
+			iterator.remove();
+			_evictionCount++;
+		}
+	}
+
+	synchronized void invalidate(String table, long id)
+	{
+		_generation++;
+
+		final Entry entry = _entries.remove(new Key(table, id));
+		if (entry != null) {
+			_bytes -= entry.bytes;
+			_invalidationCount++;
+		}
+	}
+
+	synchronized void invalidate(String table)
+	{
+		_generation++;
+
+		final Iterator<Map.Entry<Key, Entry>> iterator = _entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry<Key, Entry> entry = iterator.next();
+			if (entry.getKey().table.equals(table)) {
+				_bytes -= entry.getValue().bytes;
+				iterator.remove();
+				_invalidationCount++;
+			}
+		}
+	}
+
+	public synchronized void clear()
+	{
+		_generation++;
+		_entries.clear();
+		_bytes = 0;
+	}
+
+	public synchronized int size()
+	{
+		return _entries.size();
+	}
+
+	public synchronized long byteSize()
+	{
+		return _bytes;
+	}
+
+	public synchronized long getHitCount()
+	{
+		return _hitCount;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return _missCount;
+	}
+
+	public synchronized float getHitRate()
+	{
+		final long total = _hitCount + _missCount;
+
+		return (total > 0 ? (float) _hitCount / total : 0f);
+	}
+
+	public synchronized long getPutCount()
+	{
+		return _putCount;
+	}
+
+	public synchronized long getEvictionCount()
+	{
+		return _evictionCount;
+	}
+
+	public synchronized long getInvalidationCount()
+	{
+		return _invalidationCount;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "ModelCache[entries=" + _entries.size() + "/" + _maxEntries
+			+ ", bytes=" + _bytes + "/" + _maxBytes
+			+ ", hits=" + _hitCount + ", misses=" + _missCount
+			+ ", evictions=" + _evictionCount + ", invalidations=" + _invalidationCount + "]";
+	}
+
+	private static class Key
+	{
+		final String table;
+		final long id;
+
+		Key(String table, long id)
+		{
+			this.table = table;
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Key)) {
+				return false;
+			}
+
+			final Key key = (Key) o;
+			return id == key.id && table.equals(key.table);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * table.hashCode() + (int) (id ^ (id >>> 32));
+		}
+	}
+
+	private static class Entry
+	{
+		final Object model;
+		final int bytes;
+
+		Entry(Object model, int bytes)
+		{
+			this.model = model;
+			this.bytes = bytes;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.finallevel.cphm;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates models over the rows of a cursor, starting after its current position.
+ * The contract is resolved and the projection (full or by name) checked once per cursor instead of once per row.
+ *
+ * In flyweight mode the same model instance is populated and returned for every row,
+ * which suits scan-and-aggregate loops that do not keep references to the models.
+ *
+ * The cursor is not closed by the iterator.
+ */
+public class ModelIterator<T extends BaseColumns> implements Iterator<T>, Iterable<T>
+{
+	private static final String LOG_TAG = "ModelIterator";
+
+	private final Cursor _cursor;
+	private final Class<T> _class;
+	private final Contract _contract;
+	private final int _columnsShift;
+	private final T _flyweight;
+
+	private boolean _checked;
+	private int[] _columnMapping;
+
+	ModelIterator(Cursor cursor, Class<T> cls, Contract contract, int columnsShift, boolean flyweight)
+	{
+		_cursor = cursor;
+		_class = cls;
+		_contract = contract;
+		_columnsShift = columnsShift;
+		_flyweight = (flyweight ? _newInstance() : null);
+	}
+
+	@Override
+	public Iterator<T> iterator()
+	{
+		return this;
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		return (_cursor.getPosition() + 1 < _cursor.getCount());
+	}
+
+	@Override
+	public T next()
+	{
+		if (!_cursor.moveToNext()) {
+			throw new NoSuchElementException();
+		}
+
+		if (!_checked) {
+			if (!_contract.isFullProjection(_cursor, _columnsShift)) {
+				_columnMapping = _contract.getColumnMapping(_cursor, _columnsShift);
+			}
+			_checked = true;
+		}
+
+		final T result = (_flyweight != null ? _flyweight : _newInstance());
+		if (result == null) {
+			return null;
+		}
+
+		try {
+			if (_columnMapping != null) {
+				_contract.populateModelByName(result, _cursor, _columnsShift, _columnMapping);
+			} else {
+				_contract.populateModelUnchecked(result, _cursor, _columnsShift);
+			}
+		} catch (IllegalAccessException e) {
+			Log.w(LOG_TAG, e);
+
+			return null;
+		}
+
+		return result;
+	}
+
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	private T _newInstance()
+	{
+		//noinspection TryWithIdenticalCatches
+		try {
+			return _class.cast(_contract.newInstance());
+		} catch (InstantiationException e) {
+			Log.w(LOG_TAG, e);
+
+			return null;
+		} catch (IllegalAccessException e) {
+			Log.w(LOG_TAG, e);
+
+			return null;
+		}
+	}
+
+	public interface Visitor<T>
+	{
+		void visit(T model);
+	}
+}
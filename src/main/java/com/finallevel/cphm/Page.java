@@ -0,0 +1,38 @@
+package com.finallevel.cphm;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One page of BaseStructure.findPage() and the key to continue after it
+ */
+public class Page<T>
+{
+	public final List<T> items;
+	/** null when there are no more rows */
+	public final Key next;
+
+	Page(List<T> items, Key next)
+	{
+		this.items = items;
+		this.next = next;
+	}
+
+	/**
+	 * Values of the order columns and _id of the last row of a page.
+	 * Values are Long, Double or String; below API 11 they are all String.
+	 */
+	public static class Key implements Serializable
+	{
+		private static final long serialVersionUID = 2L;
+
+		public final Object[] values;
+		public final long id;
+
+		public Key(Object[] values, long id)
+		{
+			this.values = values;
+			this.id = id;
+		}
+	}
+}
@@ -0,0 +1,313 @@
+package com.finallevel.cphm;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per table and operation counters of BaseProvider: calls, rows returned or affected
+ * and a latency histogram, plus a bounded log of calls slower than a threshold.
+ * Returned by BaseProvider.getMetrics(), which is null (nothing is measured) by default.
+ *
+ * Subclasses may override record() and onSlowQuery() to forward measurements elsewhere.
+ */
+public class ProviderMetrics
+{
+	private static final String LOG_TAG = "ProviderMetrics";
+
+	/**
+	 * Bucket i counts calls of less than 2^i microseconds, the last one everything slower
+	 */
+	public static final int BUCKET_COUNT = 24;
+
+	/**
+	 * Batches are recorded under this table, their operations under their own tables
+	 */
+	public static final String ALL_TABLES = "*";
+
+	public enum Operation
+	{
+		QUERY,
+		INSERT,
+		BULK_INSERT,
+		UPDATE,
+		DELETE,
+		APPLY_BATCH,
+	}
+
+	private final long _slowQueryNanos;
+	private final int _slowQueryLogSize;
+
+	private final Map<String, OperationStats[]> _stats = new HashMap<>();
+	private final ArrayDeque<SlowQuery> _slowQueries;
+
+	/**
+	 * @param slowQueryMillis calls taking at least this long are logged, 0 logs every call, -1 none
+	 * @param slowQueryLogSize number of the most recent slow calls kept
+	 */
+	public ProviderMetrics(long slowQueryMillis, int slowQueryLogSize)
+	{
+		if (slowQueryLogSize < 0) {
+			throw new IllegalArgumentException("Slow query log size must not be negative");
+		}
+
+		_slowQueryNanos = (slowQueryMillis >= 0 ? slowQueryMillis * 1000000 : Long.MAX_VALUE);
+		_slowQueryLogSize = slowQueryLogSize;
+		_slowQueries = new ArrayDeque<>(Math.min(slowQueryLogSize, 64));
+	}
+
+	/**
+	 * @param table null for batches
+	 * @param rows rows returned by a query or written by the operation
+	 * @return true when the call was slow and BaseProvider should describe it with onSlowQuery()
+	 */
+	public synchronized boolean record(Operation operation, String table, int rows, long durationNanos)
+	{
+		final String key = (table != null ? table : ALL_TABLES);
+		OperationStats[] tableStats = _stats.get(key);
+		if (tableStats == null) {
+			tableStats = new OperationStats[Operation.values().length];
+			_stats.put(key, tableStats);
+		}
+
+		OperationStats stats = tableStats[operation.ordinal()];
+		if (stats == null) {
+			stats = new OperationStats(key, operation);
+			tableStats[operation.ordinal()] = stats;
+		}
+		stats.add(rows, durationNanos);
+
+		return (durationNanos >= _slowQueryNanos);
+	}
+
+	/**
+	 * Appends the call to the slow query log and writes it to logcat
+	 *
+	 * @param sql statement as executed or, for operations built by SQLiteDatabase, its equivalent
+	 * @param bindCount number of bound arguments
+	 */
+	public void onSlowQuery(Operation operation, String table, String sql, int bindCount, int rows, long durationNanos)
+	{
+		final SlowQuery query = new SlowQuery(operation, table, sql, bindCount, rows, durationNanos / 1000, System.currentTimeMillis());
+		synchronized (this) {
+			if (_slowQueryLogSize > 0) {
+				if (_slowQueries.size() == _slowQueryLogSize) {
+					_slowQueries.removeFirst();
+				}
+				_slowQueries.addLast(query);
+			}
+		}
+
+		Log.w(LOG_TAG, query.toString());
+	}
+
+	/**
+	 * @return copies of the counters of every table and operation seen so far
+	 */
+	public synchronized List<OperationStats> getStats()
+	{
+		final List<OperationStats> result = new ArrayList<>();
+		for (OperationStats[] tableStats : _stats.values()) {
+			for (OperationStats stats : tableStats) {
+				if (stats != null) {
+					result.add(stats.copy());
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return copy of the counters or null when the operation was never recorded for the table
+	 */
+	public synchronized OperationStats getStats(String table, Operation operation)
+	{
+		final OperationStats[] tableStats = _stats.get(table);
+		final OperationStats stats = (tableStats != null ? tableStats[operation.ordinal()] : null);
+
+		return (stats != null ? stats.copy() : null);
+	}
+
+	/**
+	 * @return slow calls, oldest first
+	 */
+	public synchronized List<SlowQuery> getSlowQueries()
+	{
+		return new ArrayList<>(_slowQueries);
+	}
+
+	public synchronized void reset()
+	{
+		_stats.clear();
+		_slowQueries.clear();
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		final StringBuilder builder = new StringBuilder("ProviderMetrics[");
+		boolean first = true;
+		for (OperationStats[] tableStats : _stats.values()) {
+			for (OperationStats stats : tableStats) {
+				if (stats != null) {
+					builder.append(first ? "" : ", ").append(stats);
+					first = false;
+				}
+			}
+		}
+
+		return builder.append("]").toString();
+	}
+
+	public static class OperationStats
+	{
+		public final String table;
+		public final Operation operation;
+
+		private long _count;
+		private long _rows;
+		private long _totalNanos;
+		private long _maxNanos;
+		private final long[] _buckets;
+
+		OperationStats(String table, Operation operation)
+		{
+			this(table, operation, new long[BUCKET_COUNT]);
+		}
+
+		private OperationStats(String table, Operation operation, long[] buckets)
+		{
+			this.table = table;
+			this.operation = operation;
+			_buckets = buckets;
+		}
+
+		void add(int rows, long durationNanos)
+		{
+			_count++;
+			if (rows > 0) {
+				_rows += rows;
+			}
+			_totalNanos += durationNanos;
+			if (durationNanos > _maxNanos) {
+				_maxNanos = durationNanos;
+			}
+
+			final long micros = durationNanos / 1000;
+			final int bucket = 64 - Long.numberOfLeadingZeros(micros);
+			_buckets[Math.min(bucket, BUCKET_COUNT - 1)]++;
+		}
+
+		OperationStats copy()
+		{
+			final OperationStats result = new OperationStats(table, operation, _buckets.clone());
+			result._count = _count;
+			result._rows = _rows;
+			result._totalNanos = _totalNanos;
+			result._maxNanos = _maxNanos;
+
+			return result;
+		}
+
+		public long getCount()
+		{
+			return _count;
+		}
+
+		public long getRows()
+		{
+			return _rows;
+		}
+
+		public long getAverageMicros()
+		{
+			return (_count > 0 ? _totalNanos / _count / 1000 : 0);
+		}
+
+		public long getMaxMicros()
+		{
+			return _maxNanos / 1000;
+		}
+
+		/**
+		 * @return number of calls that took less than getBucketLimitMicros(bucket)
+		 * and at least the limit of the previous bucket
+		 */
+		public long getBucketCount(int bucket)
+		{
+			return _buckets[bucket];
+		}
+
+		/**
+		 * @return upper bound of the bucket, Long.MAX_VALUE for the last one
+		 */
+		public static long getBucketLimitMicros(int bucket)
+		{
+			return (bucket < BUCKET_COUNT - 1 ? 1L << bucket : Long.MAX_VALUE);
+		}
+
+		/**
+		 * @param percentile 0..100
+		 * @return upper bound of the bucket containing the percentile, so at most twice the real value
+		 */
+		public long getPercentileMicros(float percentile)
+		{
+			if (_count == 0) {
+				return 0;
+			}
+
+			final long target = (long) Math.ceil(_count * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+				seen += _buckets[i];
+				if (seen >= target) {
+					return getBucketLimitMicros(i);
+				}
+			}
+
+			return getMaxMicros();
+		}
+
+		@Override
+		public String toString()
+		{
+			return table + "." + operation + "{count=" + _count + ", rows=" + _rows
+				+ ", avg=" + getAverageMicros() + "us, p50=" + getPercentileMicros(50)
+				+ "us, p99=" + getPercentileMicros(99) + "us, max=" + getMaxMicros() + "us}";
+		}
+	}
+
+	public static class SlowQuery
+	{
+		public final Operation operation;
+		public final String table;
+		public final String sql;
+		public final int bindCount;
+		public final int rows;
+		public final long durationMicros;
+		public final long timeMillis;
+
+		SlowQuery(Operation operation, String table, String sql, int bindCount, int rows, long durationMicros, long timeMillis)
+		{
+			this.operation = operation;
+			this.table = table;
+			this.sql = sql;
+			this.bindCount = bindCount;
+			this.rows = rows;
+			this.durationMicros = durationMicros;
+			this.timeMillis = timeMillis;
+		}
+
+		@Override
+		public String toString()
+		{
+			return operation + " " + (table != null ? table : ALL_TABLES) + " in " + durationMicros / 1000 + " ms, "
+				+ rows + " rows, " + bindCount + " args: " + sql;
+		}
+	}
+}
@@ -0,0 +1,272 @@
+package com.finallevel.cphm;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Typed criteria for one model class, created by BaseStructure.query().
+ * Column names are checked against the contract and every value is passed as a "?" argument,
+ * so queries of the same shape always produce the same SQL text and share one compiled statement.
+ * Conditions are joined with AND.
+ */
+public class Query<T extends BaseColumns>
+{
+	private final Class<T> _class;
+	private final Contract _contract;
+
+	private final StringBuilder _selection = new StringBuilder();
+	private final List<String> _selectionArgs = new ArrayList<>();
+	private final StringBuilder _sortOrder = new StringBuilder();
+	private int _limit = -1;
+
+	Query(Class<T> cls, Contract contract)
+	{
+		_class = cls;
+		_contract = contract;
+	}
+
+	/**
+	 * "column = ?", or "column IS NULL" for null
+	 */
+	public Query<T> eq(String column, Object value)
+	{
+		return (value == null ? isNull(column) : _where(column, " = ?", value));
+	}
+
+	/**
+	 * "column <> ?", or "column IS NOT NULL" for null
+	 */
+	public Query<T> ne(String column, Object value)
+	{
+		return (value == null ? isNotNull(column) : _where(column, " <> ?", value));
+	}
+
+	public Query<T> lt(String column, Object value)
+	{
+		return _where(column, " < ?", value);
+	}
+
+	public Query<T> le(String column, Object value)
+	{
+		return _where(column, " <= ?", value);
+	}
+
+	public Query<T> gt(String column, Object value)
+	{
+		return _where(column, " > ?", value);
+	}
+
+	public Query<T> ge(String column, Object value)
+	{
+		return _where(column, " >= ?", value);
+	}
+
+	public Query<T> like(String column, String pattern)
+	{
+		return _where(column, " LIKE ?", pattern);
+	}
+
+	public Query<T> isNull(String column)
+	{
+		_appendColumn(column).append(" IS NULL");
+
+		return this;
+	}
+
+	public Query<T> isNotNull(String column)
+	{
+		_appendColumn(column).append(" IS NOT NULL");
+
+		return this;
+	}
+
+	/**
+	 * Empty values match no rows
+	 */
+	public Query<T> in(String column, Object... values)
+	{
+		if (values.length == 0) {
+			_appendCondition().append("0");
+			return this;
+		}
+		if (values.length > BaseStructure.MAX_SQL_VARIABLES) {
+			throw new IllegalArgumentException("Too many values for IN: " + values.length);
+		}
+
+		final String[] args = new String[values.length];
+		for (int i = 0; i < values.length; i++) {
+			args[i] = _toArg(values[i]);
+		}
+
+		_appendColumn(column).append(" IN (");
+		for (int i = 0; i < args.length; i++) {
+			_selection.append(i > 0 ? ", ?" : "?");
+			_selectionArgs.add(args[i]);
+		}
+		_selection.append(")");
+
+		return this;
+	}
+
+	public Query<T> orderBy(String column, boolean descending)
+	{
+		_checkColumn(column);
+		if (_sortOrder.length() > 0) {
+			_sortOrder.append(", ");
+		}
+		_sortOrder.append('"').append(column).append('"').append(descending ? " DESC" : " ASC");
+
+		return this;
+	}
+
+	public Query<T> limit(int limit)
+	{
+		if (limit < 0) {
+			throw new IllegalArgumentException("Negative limit " + limit);
+		}
+		_limit = limit;
+
+		return this;
+	}
+
+	/**
+	 * @return selection or null when there are no conditions
+	 */
+	public String getSelection()
+	{
+		return (_selection.length() > 0 ? _selection.toString() : null);
+	}
+
+	/**
+	 * @return selection arguments or null when there are none
+	 */
+	public String[] getSelectionArgs()
+	{
+		return (_selectionArgs.isEmpty() ? null : _selectionArgs.toArray(new String[_selectionArgs.size()]));
+	}
+
+	/**
+	 * @return sort order or null
+	 */
+	public String getSortOrder()
+	{
+		return (_sortOrder.length() > 0 ? _sortOrder.toString() : null);
+	}
+
+	/**
+	 * @return uri with BaseProvider.PARAM_LIMIT when a limit is set
+	 */
+	public Uri getUri(Uri uri)
+	{
+		if (_limit < 0) {
+			return uri;
+		}
+
+		return uri.buildUpon().appendQueryParameter(BaseProvider.PARAM_LIMIT, Integer.toString(_limit)).build();
+	}
+
+	public Cursor getCursor(Uri uri, Context context)
+	{
+		return context.getContentResolver().query(
+			getUri(uri),
+			_contract.getProjection(),
+			getSelection(),
+			getSelectionArgs(),
+			getSortOrder()
+		);
+	}
+
+	/**
+	 * @param uri table uri
+	 */
+	public List<T> find(Uri uri, Context context)
+	{
+		final Cursor cursor = getCursor(uri, context);
+		if (cursor == null) {
+			return Collections.emptyList();
+		}
+
+		try {
+			final List<T> result = new ArrayList<>(cursor.getCount());
+			final ModelIterator<T> iterator = new ModelIterator<>(cursor, _class, _contract, 0, false);
+			while (iterator.hasNext()) {
+				final T model = iterator.next();
+				if (model != null) {
+					result.add(model);
+				}
+			}
+
+			return result;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Runs the query with limit 1
+	 *
+	 * @param uri table uri
+	 */
+	public T findFirst(Uri uri, Context context)
+	{
+		final int limit = _limit;
+		_limit = 1;
+		try {
+			final List<T> result = find(uri, context);
+
+			return (result.isEmpty() ? null : result.get(0));
+		} finally {
+			_limit = limit;
+		}
+	}
+
+	private Query<T> _where(String column, String operator, Object value)
+	{
+		final String arg = _toArg(value);
+		_appendColumn(column).append(operator);
+		_selectionArgs.add(arg);
+
+		return this;
+	}
+
+	private StringBuilder _appendColumn(String column)
+	{
+		_checkColumn(column);
+
+		return _appendCondition().append('"').append(column).append('"');
+	}
+
+	private StringBuilder _appendCondition()
+	{
+		if (_selection.length() > 0) {
+			_selection.append(" AND ");
+		}
+
+		return _selection;
+	}
+
+	private void _checkColumn(String column)
+	{
+		if (!_contract.hasColumn(column)) {
+			throw new IllegalArgumentException("Unknown column " + column + " of " + _class.getName());
+		}
+	}
+
+	private static String _toArg(Object value)
+	{
+		if (value == null) {
+			throw new IllegalArgumentException("Null values can not be selection arguments");
+		} else if (value instanceof Boolean) {
+			return ((Boolean) value ? "1" : "0");
+		} else if (value instanceof byte[]) {
+			throw new IllegalArgumentException("BLOB values can not be selection arguments");
+		}
+
+		return value.toString();
+	}
+}
@@ -0,0 +1,363 @@
+package com.finallevel.cphm;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Materialized query results of BaseProvider, keyed by uri, projection, selection, arguments and order.
+ * Every table has a generation counter bumped on each write; a snapshot is valid only while
+ * all its tables still have the generations it was loaded with.
+ * Bounded by approximate byte size, least recently used snapshots are evicted first.
+ *
+ * Requires API 11 (Cursor.getType)
+ */
+class QueryCache
+{
+	private final long _maxBytes;
+	private final int _maxRows;
+
+	private final Map<String, long[]> _generations = new HashMap<>();
+	private final LinkedHashMap<String, Snapshot> _snapshots = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long _bytes;
+	private long _hitCount;
+	private long _missCount;
+	private long _evictionCount;
+
+	QueryCache(long maxBytes, int maxRows)
+	{
+		_maxBytes = maxBytes;
+		_maxRows = maxRows;
+	}
+
+	static String key(String uri, String[] projection, String selection, String[] selectionArgs, String sortOrder)
+	{
+		final StringBuilder builder = new StringBuilder(uri).append('\u0000');
+		if (projection != null) {
+			for (String column : projection) {
+				builder.append(column).append('\u0001');
+			}
+		}
+		builder.append('\u0000').append(selection).append('\u0000');
+		if (selectionArgs != null) {
+			for (String arg : selectionArgs) {
+				builder.append(arg).append('\u0001');
+			}
+		}
+		builder.append('\u0000').append(sortOrder);
+
+		return builder.toString();
+	}
+
+	synchronized Cursor get(String key)
+	{
+		final Snapshot snapshot = _snapshots.get(key);
+		if (snapshot == null) {
+			_missCount++;
+			return null;
+		}
+
+		for (int i = 0; i < snapshot.tables.length; i++) {
+			if (_getGeneration(snapshot.tables[i])[0] != snapshot.generations[i]) {
+				_snapshots.remove(key);
+				_bytes -= snapshot.bytes;
+				_missCount++;
+				return null;
+			}
+		}
+
+		_hitCount++;
+		return new SnapshotCursor(snapshot);
+	}
+
+	/**
+	 * Taken before the query runs, so writes that race with loading make the snapshot stale
+	 */
+	synchronized long[] getGenerations(String[] tables)
+	{
+		final long[] result = new long[tables.length];
+		for (int i = 0; i < tables.length; i++) {
+			result[i] = _getGeneration(tables[i])[0];
+		}
+
+		return result;
+	}
+
+	/**
+	 * Materializes the cursor when it is small enough. The original cursor is closed in that case.
+	 *
+	 * @return cursor over the snapshot, or the original cursor when it is too large to be cached
+	 */
+	Cursor put(String key, String[] tables, long[] generations, Cursor cursor)
+	{
+		final int count = cursor.getCount();
+		if (count > _maxRows) {
+			return cursor;
+		}
+
+		final String[] columns = cursor.getColumnNames();
+		final Object[][] rows = new Object[count][];
+		long bytes = 64 + key.length() * 2;
+		try {
+			int r = 0;
+			cursor.moveToPosition(-1);
+			while (cursor.moveToNext()) {
+				final Object[] row = new Object[columns.length];
+				for (int i = 0; i < columns.length; i++) {
+					switch (cursor.getType(i)) {
+						case Cursor.FIELD_TYPE_INTEGER:
+							row[i] = cursor.getLong(i);
+							bytes += 24;
+							break;
+						case Cursor.FIELD_TYPE_FLOAT:
+							row[i] = cursor.getDouble(i);
+							bytes += 24;
+							break;
+						case Cursor.FIELD_TYPE_STRING: {
+							final String value = cursor.getString(i);
+							row[i] = value;
+							bytes += 40 + value.length() * 2;
+							break;
+						}
+						case Cursor.FIELD_TYPE_BLOB: {
+							final byte[] value = cursor.getBlob(i);
+							row[i] = value;
+							bytes += 16 + value.length;
+							break;
+						}
+						default:
+							bytes += 4;
+					}
+				}
+				rows[r++] = row;
+				bytes += 16;
+			}
+		} finally {
+			cursor.close();
+		}
+
+		final Snapshot snapshot = new Snapshot(columns, rows, tables, generations, bytes);
+		if (bytes <= _maxBytes / 4) {
+			synchronized (this) {
+				if (_isCurrent(tables, generations)) {
+					final Snapshot previous = _snapshots.put(key, snapshot);
+					if (previous != null) {
+						_bytes -= previous.bytes;
+					}
+					_bytes += bytes;
+
+					final Iterator<Snapshot> iterator = _snapshots.values().iterator();
+					while (_bytes > _maxBytes && iterator.hasNext()) {
+						_bytes -= iterator.next().bytes;
+						iterator.remove();
+						_evictionCount++;
+					}
+				}
+			}
+		}
+
+		return new SnapshotCursor(snapshot);
+	}
+
+	synchronized void onWrite(String table)
+	{
+		_getGeneration(table)[0]++;
+	}
+
+	synchronized long getHitCount()
+	{
+		return _hitCount;
+	}
+
+	synchronized long getMissCount()
+	{
+		return _missCount;
+	}
+
+	synchronized long getEvictionCount()
+	{
+		return _evictionCount;
+	}
+
+	synchronized long getBytes()
+	{
+		return _bytes;
+	}
+
+	private boolean _isCurrent(String[] tables, long[] generations)
+	{
+		for (int i = 0; i < tables.length; i++) {
+			if (_getGeneration(tables[i])[0] != generations[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private long[] _getGeneration(String table)
+	{
+		long[] generation = _generations.get(table);
+		if (generation == null) {
+			generation = new long[1];
+			_generations.put(table, generation);
+		}
+
+		return generation;
+	}
+
+	private static class Snapshot
+	{
+		final String[] columns;
+		final Object[][] rows;
+		final String[] tables;
+		final long[] generations;
+		final long bytes;
+
+		Snapshot(String[] columns, Object[][] rows, String[] tables, long[] generations, long bytes)
+		{
+			this.columns = columns;
+			this.rows = rows;
+			this.tables = tables;
+			this.generations = generations;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * Read only cursor over a shared snapshot. Getters convert values with SQLiteConversions,
+	 * as SQLite would for the query it replaces.
+	 */
+	private static class SnapshotCursor extends AbstractCursor
+	{
+		private final Snapshot _snapshot;
+
+		SnapshotCursor(Snapshot snapshot)
+		{
+			_snapshot = snapshot;
+		}
+
+		@Override
+		public int getCount()
+		{
+			return _snapshot.rows.length;
+		}
+
+		@Override
+		public String[] getColumnNames()
+		{
+			return _snapshot.columns;
+		}
+
+		@Override
+		public int getType(int column)
+		{
+			final Object value = _get(column);
+			if (value == null) {
+				return FIELD_TYPE_NULL;
+			} else if (value instanceof Long) {
+				return FIELD_TYPE_INTEGER;
+			} else if (value instanceof Double) {
+				return FIELD_TYPE_FLOAT;
+			} else if (value instanceof byte[]) {
+				return FIELD_TYPE_BLOB;
+			}
+
+			return FIELD_TYPE_STRING;
+		}
+
+		@Override
+		public String getString(int column)
+		{
+			final Object value = _get(column);
+			if (value == null) {
+				return null;
+			} else if (value instanceof byte[]) {
+				throw new IllegalStateException("Column " + column + " is a BLOB");
+			} else if (value instanceof Double) {
+				return SQLiteConversions.formatReal((Double) value);
+			}
+
+			return value.toString();
+		}
+
+		@Override
+		public byte[] getBlob(int column)
+		{
+			final Object value = _get(column);
+			if (value == null) {
+				return null;
+			} else if (value instanceof byte[]) {
+				return ((byte[]) value).clone(); // snapshot is shared
+			}
+
+			return getString(column).getBytes(Charset.forName("UTF-8"));
+		}
+
+		@Override
+		public short getShort(int column)
+		{
+			return (short) getLong(column);
+		}
+
+		@Override
+		public int getInt(int column)
+		{
+			return (int) getLong(column);
+		}
+
+		@Override
+		public long getLong(int column)
+		{
+			final Object value = _get(column);
+			if (value instanceof Number) {
+				return ((Number) value).longValue();
+			} else if (value instanceof String) {
+				return SQLiteConversions.parseInteger((String) value);
+			}
+
+			return 0;
+		}
+
+		@Override
+		public float getFloat(int column)
+		{
+			return (float) getDouble(column);
+		}
+
+		@Override
+		public double getDouble(int column)
+		{
+			final Object value = _get(column);
+			if (value instanceof Number) {
+				return ((Number) value).doubleValue();
+			} else if (value instanceof String) {
+				return SQLiteConversions.parseReal((String) value);
+			}
+
+			return 0;
+		}
+
+		@Override
+		public boolean isNull(int column)
+		{
+			return (_get(column) == null);
+		}
+
+		private Object _get(int column)
+		{
+			final int position = getPosition();
+			if (position < 0 || position >= _snapshot.rows.length) {
+				throw new IllegalStateException("Cursor position out of range: " + position);
+			}
+
+			return _snapshot.rows[position][column];
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package com.finallevel.cphm;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Diagnostic mode of BaseProvider.query(): every distinct query shape (SQL text with ? placeholders)
+ * is run once through EXPLAIN QUERY PLAN and the plan is kept. Plans scanning a registered table
+ * without an index, or sorting in a temp B-tree, are reported with the index that would cover them.
+ * Returned by BaseProvider.getQueryPlanRecorder(), null (disabled) by default.
+ *
+ * Every new shape costs one more statement, so enable it in debug builds and tests.
+ */
+public class QueryPlanRecorder
+{
+	private static final String LOG_TAG = "QueryPlanRecorder";
+
+	// "SCAN TABLE book AS b" before SQLite 3.36, "SCAN b" since: aliases are resolved with the FROM clause
+	private static final Pattern SCAN = Pattern.compile("^SCAN (?:TABLE )?(\\w+)(.*)$");
+	// table reference after FROM, JOIN or a comma, with its optional alias
+	private static final String IDENTIFIER = "(\"[^\"]+\"|`[^`]+`|\\[[^\\]]+\\]|\\w+)";
+	private static final Pattern TABLE_REFERENCE = Pattern.compile(
+		"(?:\\bFROM|\\bJOIN|,)\\s*" + IDENTIFIER + "(?:\\s+(?:AS\\s+)?" + IDENTIFIER + ")?",
+		Pattern.CASE_INSENSITIVE
+	);
+	private static final Set<String> NOT_ALIASES = new HashSet<>(Arrays.asList(
+		"as", "cross", "except", "from", "full", "group", "having", "indexed", "inner", "intersect", "join",
+		"left", "limit", "natural", "not", "on", "order", "outer", "right", "union", "using", "where", "window"
+	));
+	private static final String TEMP_B_TREE = "USE TEMP B-TREE";
+
+	private final int _maxShapes;
+	private final Map<String, QueryPlan> _plans = new LinkedHashMap<>();
+
+	/**
+	 * @param maxShapes shapes seen after this many are not explained, selections with inlined values
+	 * make a new shape for every value
+	 */
+	public QueryPlanRecorder(int maxShapes)
+	{
+		_maxShapes = maxShapes;
+	}
+
+	/**
+	 * @return true only for the first call with this SQL, while there is room for it
+	 */
+	synchronized boolean shouldExplain(String sql)
+	{
+		if (_plans.containsKey(sql) || _plans.size() >= _maxShapes) {
+			return false;
+		}
+		_plans.put(sql, null); // taken, other threads do not explain it again
+
+		return true;
+	}
+
+	void add(BaseStructure structure, String sql, String[] tables, String selection, String[] joinOn, String sortOrder, List<String> details)
+	{
+		final QueryPlan plan = new QueryPlan(sql, details);
+		final QueryShape shape = new QueryShape(structure, tables, selection, joinOn, sortOrder);
+		final Map<String, String> aliases = _getAliases(structure, sql);
+
+		for (String detail : details) {
+			final Matcher matcher = SCAN.matcher(detail);
+			if (matcher.matches() && !matcher.group(2).contains(" INDEX ")) {
+				final String alias = aliases.get(matcher.group(1).toLowerCase());
+				final String table = (alias != null ? alias : matcher.group(1));
+				if (structure.containsTable(table)) {
+					plan.scannedTables.add(table);
+				}
+			} else if (detail.startsWith(TEMP_B_TREE)) {
+				plan._tempBTree = true;
+			}
+		}
+
+		for (QueryShape.Usage usage : shape.usages.values()) {
+			if (!plan.scannedTables.contains(usage.table) && !(plan._tempBTree && !usage.order.isEmpty())) {
+				continue;
+			}
+
+			final String[] columns = usage.getIndexColumns();
+			if (columns != null) {
+				final IndexSuggestion suggestion = new IndexSuggestion(usage.table, columns);
+				if (!suggestion.isDeclared(structure)) {
+					plan.suggestions.add(suggestion);
+				}
+			}
+		}
+
+		synchronized (this) {
+			_plans.put(sql, plan);
+		}
+
+		if (plan.hasProblems()) {
+			onProblem(plan);
+		}
+	}
+
+	/**
+	 * @return lower case alias => registered table, for every "table AS alias" or "table alias" of sql
+	 */
+	private static Map<String, String> _getAliases(BaseStructure structure, String sql)
+	{
+		final Map<String, String> result = new HashMap<>();
+		final Matcher matcher = TABLE_REFERENCE.matcher(sql);
+		while (matcher.find()) {
+			if (matcher.group(2) == null) {
+				continue;
+			}
+
+			final String table = _unquote(matcher.group(1));
+			final String alias = _unquote(matcher.group(2)).toLowerCase();
+			if (!NOT_ALIASES.contains(alias) && !alias.equalsIgnoreCase(table) && structure.containsTable(table)) {
+				result.put(alias, table);
+			}
+		}
+
+		return result;
+	}
+
+	private static String _unquote(String identifier)
+	{
+		final char first = identifier.charAt(0);
+
+		return (first == '"' || first == '`' || first == '[' ? identifier.substring(1, identifier.length() - 1) : identifier);
+	}
+
+	/**
+	 * Called once for every shape with a full scan or a temp B-tree, logs it by default
+	 */
+	protected void onProblem(QueryPlan plan)
+	{
+		Log.w(LOG_TAG, plan.toString());
+	}
+
+	/**
+	 * @return plans of all explained shapes, in the order they were first seen
+	 */
+	public synchronized List<QueryPlan> getPlans()
+	{
+		final List<QueryPlan> result = new ArrayList<>(_plans.size());
+		for (QueryPlan plan : _plans.values()) {
+			if (plan != null) {
+				result.add(plan);
+			}
+		}
+
+		return result;
+	}
+
+	public synchronized List<QueryPlan> getProblems()
+	{
+		final List<QueryPlan> result = new ArrayList<>();
+		for (QueryPlan plan : _plans.values()) {
+			if (plan != null && plan.hasProblems()) {
+				result.add(plan);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return every offending shape with its plan, followed by the addIndex() calls that would cover them
+	 */
+	public String dump()
+	{
+		final List<QueryPlan> problems = getProblems();
+		final Set<IndexSuggestion> suggestions = new LinkedHashSet<>();
+
+		final StringBuilder builder = new StringBuilder();
+		for (QueryPlan plan : problems) {
+			builder.append(plan.sql).append('\n');
+			for (String detail : plan.details) {
+				builder.append("  ").append(detail).append('\n');
+			}
+			suggestions.addAll(plan.suggestions);
+		}
+		builder.append(problems.size()).append(" of ").append(getPlans().size()).append(" query shapes scan or sort\n");
+
+		for (IndexSuggestion suggestion : suggestions) {
+			builder.append(suggestion.toCode()).append('\n');
+		}
+
+		return builder.toString();
+	}
+
+	public synchronized void clear()
+	{
+		_plans.clear();
+	}
+
+	public static class QueryPlan
+	{
+		public final String sql;
+		public final List<String> details;
+		public final Set<String> scannedTables = new LinkedHashSet<>();
+		public final List<IndexSuggestion> suggestions = new ArrayList<>();
+
+		private boolean _tempBTree;
+
+		QueryPlan(String sql, List<String> details)
+		{
+			this.sql = sql;
+			this.details = Collections.unmodifiableList(details);
+		}
+
+		/**
+		 * @return true when ORDER BY, GROUP BY or DISTINCT sort rows in a temporary B-tree
+		 */
+		public boolean usesTempBTree()
+		{
+			return _tempBTree;
+		}
+
+		public boolean hasProblems()
+		{
+			return (_tempBTree || !scannedTables.isEmpty());
+		}
+
+		@Override
+		public String toString()
+		{
+			return (scannedTables.isEmpty() ? "" : "SCAN " + scannedTables + " ")
+				+ (_tempBTree ? "TEMP B-TREE " : "")
+				+ (suggestions.isEmpty() ? "" : suggestions + " ")
+				+ "for " + sql;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package com.finallevel.cphm;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Columns of registered tables a query filters, joins and sorts on, taken from its selection,
+ * BaseProvider.PARAM_JOIN_ON conditions and order.
+ * The parser only knows "column operator ..." terms and ignores everything else, so it is a hint
+ * for index diagnostics and never affects how the query runs.
+ */
+class QueryShape
+{
+	private static final Pattern LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern TERM = Pattern.compile(
+		"(?:\"?(\\w+)\"?\\.)?\"?(\\w+)\"?\\s*(==|=|!=|<>|<=|>=|<|>|\\bIS\\s+NOT\\b|\\bIS\\b|\\bNOT\\s+IN\\b|\\bIN\\b|\\bLIKE\\b|\\bGLOB\\b|\\bBETWEEN\\b)",
+		Pattern.CASE_INSENSITIVE
+	);
+	private static final Pattern JOIN_TERM = Pattern.compile(
+		"(?:\"?(\\w+)\"?\\.)?\"?(\\w+)\"?\\s*==?\\s*(?:\"?(\\w+)\"?\\.)?\"?(\\w+)\"?"
+	);
+	private static final Pattern ORDER_TERM = Pattern.compile(
+		"^\\s*(?:\"?(\\w+)\"?\\.)?\"?(\\w+)\"?(?:\\s+(?:ASC|DESC))?\\s*$",
+		Pattern.CASE_INSENSITIVE
+	);
+
+	final String[] tables;
+	final Map<String, Usage> usages = new LinkedHashMap<>();
+
+	private final BaseStructure _structure;
+
+	/**
+	 * @param joinOn conditions of the joined tables, null for single table queries
+	 */
+	QueryShape(BaseStructure structure, String[] tables, String selection, String[] joinOn, String sortOrder)
+	{
+		_structure = structure;
+		this.tables = tables;
+
+		if (selection != null) {
+			final Matcher matcher = TERM.matcher(LITERAL.matcher(selection).replaceAll("''"));
+			while (matcher.find()) {
+				final Usage usage = _resolve(matcher.group(1), matcher.group(2));
+				if (usage == null) {
+					continue;
+				}
+
+				final String operator = matcher.group(3).toUpperCase().replaceAll("\\s+", " ");
+				if (operator.equals("=") || operator.equals("==") || operator.equals("IS") || operator.equals("IN")) {
+					usage.equality.add(matcher.group(2));
+				} else if (!operator.equals("!=") && !operator.equals("<>") && !operator.startsWith("NOT") && !operator.startsWith("IS")) {
+					usage.range.add(matcher.group(2));
+				}
+			}
+		}
+
+		if (joinOn != null) {
+			for (String condition : joinOn) {
+				final Matcher matcher = JOIN_TERM.matcher(LITERAL.matcher(condition).replaceAll("''"));
+				while (matcher.find()) {
+					_addJoin(matcher.group(1), matcher.group(2));
+					_addJoin(matcher.group(3), matcher.group(4));
+				}
+			}
+		}
+
+		if (sortOrder != null) {
+			for (String term : sortOrder.split(",")) {
+				final Matcher matcher = ORDER_TERM.matcher(term);
+				if (matcher.matches()) {
+					final Usage usage = _resolve(matcher.group(1), matcher.group(2));
+					if (usage != null) {
+						usage.order.add(matcher.group(2));
+					}
+				}
+			}
+		}
+	}
+
+	private void _addJoin(String qualifier, String column)
+	{
+		final Usage usage = _resolve(qualifier, column);
+		if (usage != null && !column.equals(BaseColumns.CN_ID)) { // rowid lookups need no index
+			usage.join.add(column);
+		}
+	}
+
+	/**
+	 * Usage of the column in one of the queried tables: the qualified one, or the first that has the column
+	 */
+	private Usage _resolve(String qualifier, String column)
+	{
+		for (String table : tables) {
+			if (qualifier != null && !qualifier.equals(table)) {
+				continue;
+			}
+
+			final BaseStructure.TableHolder tableHolder = _structure.getTableHolders().get(table);
+			if (tableHolder != null && tableHolder.contract.get().hasColumn(column)) {
+				Usage usage = usages.get(table);
+				if (usage == null) {
+					usage = new Usage(table);
+					usages.put(table, usage);
+				}
+
+				return usage;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Columns of one table in the order an index serves them best: equality and join terms,
+	 * one range term or, without range terms, the order
+	 */
+	static class Usage
+	{
+		final String table;
+		final Set<String> equality = new LinkedHashSet<>();
+		final Set<String> join = new LinkedHashSet<>();
+		final Set<String> range = new LinkedHashSet<>();
+		final List<String> order = new ArrayList<>();
+
+		Usage(String table)
+		{
+			this.table = table;
+		}
+
+		/**
+		 * @return null when nothing could be indexed or the rows are found by _id anyway
+		 */
+		String[] getIndexColumns()
+		{
+			if (equality.contains(BaseColumns.CN_ID)) {
+				return null;
+			}
+
+			final Set<String> columns = new LinkedHashSet<>(equality);
+			columns.addAll(join);
+			if (!range.isEmpty()) {
+				columns.add(range.iterator().next());
+			} else {
+				for (String column : order) {
+					if (column.equals(BaseColumns.CN_ID)) {
+						break; // rowid order comes with every index
+					}
+					columns.add(column);
+				}
+			}
+
+			return (columns.isEmpty() ? null : columns.toArray(new String[columns.size()]));
+		}
+
+		/**
+		 * @return true when the index can find or order rows of this usage, judged by its first column
+		 */
+		boolean isServedBy(String[] indexColumns)
+		{
+			final String first = indexColumns[0];
+
+			return equality.contains(first) || join.contains(first) || range.contains(first)
+				|| (!order.isEmpty() && order.get(0).equals(first));
+		}
+	}
+}
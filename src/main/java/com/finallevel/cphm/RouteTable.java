@@ -0,0 +1,109 @@
+package com.finallevel.cphm;
+
+import android.net.Uri;
+import android.text.TextUtils;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interned routes for the first path segment of provider uris ("table" or "table1,table2").
+ * Routes of registered tables are built up front, joins are validated and interned on first use,
+ * so resolving a known uri allocates nothing beyond what Uri itself does.
+ * Callers choose the join permutations, so only the first MAX_JOIN_ROUTES are interned,
+ * later ones get a new route on every call.
+ */
+class RouteTable
+{
+	static final long NO_ID = Long.MIN_VALUE;
+	static final int MAX_JOIN_ROUTES = 64;
+
+	private final BaseStructure _structure;
+	private final ConcurrentHashMap<String, Route> _routes = new ConcurrentHashMap<>();
+	private final AtomicInteger _joinCount = new AtomicInteger();
+
+	RouteTable(BaseStructure structure)
+	{
+		_structure = structure;
+
+		for (String table : structure.getTableHolders().keySet()) {
+			_routes.put(table, new Route(new String[] { table }));
+		}
+	}
+
+	/**
+	 * @return route of the uri or null for unknown tables
+	 */
+	Route getRoute(Uri uri)
+	{
+		final List<String> segments = uri.getPathSegments();
+		if (segments.isEmpty()) {
+			return null;
+		}
+
+		final String segment = segments.get(0);
+		final Route route = _routes.get(segment);
+		if (route != null) {
+			return route;
+		}
+
+		final String[] tables = segment.split(",");
+		for (final String table : tables) {
+			if (!_structure.containsTable(table)) {
+				return null;
+			}
+		}
+
+		final Route created = new Route(tables);
+		if (_joinCount.get() >= MAX_JOIN_ROUTES) {
+			return created;
+		}
+
+		final Route previous = _routes.putIfAbsent(segment, created);
+		if (previous != null) {
+			return previous;
+		}
+		_joinCount.incrementAndGet(); // may overshoot by the number of racing threads
+
+		return created;
+	}
+
+	/**
+	 * @return id from the second path segment or NO_ID
+	 */
+	static long getId(Uri uri)
+	{
+		final List<String> segments = uri.getPathSegments();
+		if (segments.size() > 1) {
+			final String id = segments.get(1);
+			if (id.length() > 0) {
+				return Long.parseLong(id);
+			}
+		}
+
+		return NO_ID;
+	}
+
+	static class Route
+	{
+		final String[] tables;
+		final String table;
+		final String name;
+		final boolean join;
+		final String dirType;
+		final String itemType;
+
+		Route(String[] tables)
+		{
+			this.tables = tables;
+			this.table = tables[0];
+			this.join = (tables.length > 1);
+			this.name = (join ? TextUtils.join(",", tables) : table);
+
+			final String typeName = TextUtils.join(".", tables);
+			this.dirType = "vnd.android.cursor.dir/vdn." + typeName;
+			this.itemType = "vnd.android.cursor.item/vdn." + typeName;
+		}
+	}
+}
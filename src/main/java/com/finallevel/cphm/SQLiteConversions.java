@@ -0,0 +1,427 @@
+package com.finallevel.cphm;
+
+import java.math.BigInteger;
+
+/**
+ * SQLite's own conversions between storage classes, for cursors that do not come from SQLite
+ * but must read the same: REAL as TEXT is printf "%!.15g", TEXT as a number is its numeric prefix.
+ * Ports of sqlite3 3.3x printf and sqlite3AtoF(), which compute in x87 long double; it is emulated
+ * with a 64 bit mantissa so near halfway values round to the same last digit as in SQLite.
+ */
+final class SQLiteConversions
+{
+	private static final int PRECISION = 15;
+	/** et_getdigit() limit for the "!" flag */
+	private static final int MAX_DIGITS = 26;
+
+	private SQLiteConversions()
+	{
+	}
+
+	/**
+	 * CAST(value AS TEXT) of a REAL
+	 */
+	static String formatReal(double value)
+	{
+		if (Double.isNaN(value)) {
+			return "NaN";
+		} else if (Double.isInfinite(value)) {
+			return (value > 0 ? "Inf" : "-Inf");
+		}
+
+		final StringBuilder b = new StringBuilder(24);
+		if (value < 0) {
+			b.append('-');
+		}
+
+		final int precision = PRECISION - 1;
+		// 5.0e-05 * 1.0e-10 as sqlite3 builds it from its arRound table
+		final Extended rounder = Extended.of(5.0e-05).multiply(Extended.of(1.0e-10));
+
+		Extended real = Extended.of(Math.abs(value));
+		int exp = 0;
+		if (real.signum() > 0) {
+			Extended scale = Extended.of(1.0);
+			while (real.compareTo(Extended.of(1e100).multiply(scale)) >= 0 && exp <= 350) {
+				scale = scale.multiply(Extended.of(1e100));
+				exp += 100;
+			}
+			while (real.compareTo(Extended.of(1e10).multiply(scale)) >= 0 && exp <= 350) {
+				scale = scale.multiply(Extended.of(1e10));
+				exp += 10;
+			}
+			while (real.compareTo(Extended.of(10.0).multiply(scale)) >= 0 && exp <= 350) {
+				scale = scale.multiply(Extended.of(10.0));
+				exp++;
+			}
+			real = real.divide(scale);
+			while (real.compareTo(Extended.of(1e-8)) < 0) {
+				real = real.multiply(Extended.of(1e8));
+				exp -= 8;
+			}
+			while (real.compareTo(Extended.of(1.0)) < 0) {
+				real = real.multiply(Extended.of(10.0));
+				exp--;
+			}
+		}
+
+		real = real.add(rounder);
+		if (real.compareTo(Extended.of(10.0)) >= 0) {
+			real = real.multiply(Extended.of(0.1));
+			exp++;
+		}
+
+		final boolean exponential = (exp < -4 || exp > precision);
+		int digits = (exponential ? precision : precision - exp);
+		int e2 = (exponential ? 0 : exp);
+		final DigitSource source = new DigitSource(real);
+
+		if (e2 < 0) {
+			b.append('0');
+		} else {
+			for (; e2 >= 0; e2--) {
+				b.append(source.next());
+			}
+		}
+		b.append('.');
+		for (e2++; e2 < 0; digits--, e2++) {
+			b.append('0');
+		}
+		while (digits-- > 0) {
+			b.append(source.next());
+		}
+
+		int end = b.length();
+		while (b.charAt(end - 1) == '0') {
+			end--;
+		}
+		b.setLength(end);
+		if (b.charAt(end - 1) == '.') {
+			b.append('0');
+		}
+
+		if (exponential) {
+			b.append(exp < 0 ? "e-" : "e+");
+			int abs = Math.abs(exp);
+			if (abs >= 100) {
+				b.append((char) ('0' + abs / 100));
+				abs %= 100;
+			}
+			b.append((char) ('0' + abs / 10)).append((char) ('0' + abs % 10));
+		}
+
+		return b.toString();
+	}
+
+	/**
+	 * CAST(value AS INTEGER) of a TEXT: leading spaces, sign and digits, "12abc" is 12.
+	 * Out of range values clamp to the long range.
+	 */
+	static long parseInteger(String value)
+	{
+		final int length = value.length();
+		int i = _skipSpaces(value, 0);
+		final boolean negative = (i < length && value.charAt(i) == '-');
+		if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+			i++;
+		}
+
+		long result = 0;
+		for (; i < length && _isDigit(value.charAt(i)); i++) {
+			final int digit = value.charAt(i) - '0';
+			if (negative ? -result < (Long.MIN_VALUE + digit) / 10 : result > (Long.MAX_VALUE - digit) / 10) {
+				return (negative ? Long.MIN_VALUE : Long.MAX_VALUE);
+			}
+			result = result * 10 + digit;
+		}
+
+		return (negative ? -result : result);
+	}
+
+	/**
+	 * CAST(value AS REAL) of a TEXT: its longest numeric prefix, "3.5e2z" is 350.0, none is 0.0.
+	 * Port of sqlite3AtoF(), which scales the significand in long double.
+	 */
+	static double parseReal(String value)
+	{
+		final int length = value.length();
+		int i = _skipSpaces(value, 0);
+		final boolean negative = (i < length && value.charAt(i) == '-');
+		if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+			i++;
+		}
+
+		long s = 0;
+		int d = 0;
+		for (; i < length && _isDigit(value.charAt(i)); i++) {
+			s = s * 10 + (value.charAt(i) - '0');
+			if (s >= (Long.MAX_VALUE - 9) / 10) {
+				// digits past the significand only move the exponent
+				for (i++; i < length && _isDigit(value.charAt(i)); i++) {
+					d++;
+				}
+				break;
+			}
+		}
+		if (i < length && value.charAt(i) == '.') {
+			for (i++; i < length && _isDigit(value.charAt(i)); i++) {
+				if (s < (Long.MAX_VALUE - 9) / 10) {
+					s = s * 10 + (value.charAt(i) - '0');
+					d--;
+				}
+			}
+		}
+		int e = 0;
+		boolean negativeExponent = false;
+		if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+			i++;
+			negativeExponent = (i < length && value.charAt(i) == '-');
+			if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+				i++;
+			}
+			for (; i < length && _isDigit(value.charAt(i)); i++) {
+				e = (e < 10000 ? e * 10 + (value.charAt(i) - '0') : 10000);
+			}
+		}
+
+		if (s == 0) {
+			return (negative ? -0.0 : 0.0);
+		}
+
+		e = (negativeExponent ? -e : e) + d;
+		final boolean divide = (e < 0);
+		e = Math.abs(e);
+		while (e > 0) {
+			if (!divide) {
+				if (s >= Long.MAX_VALUE / 10) {
+					break;
+				}
+				s *= 10;
+			} else {
+				if (s % 10 != 0) {
+					break;
+				}
+				s /= 10;
+			}
+			e--;
+		}
+
+		final double result;
+		if (e == 0) {
+			result = (double) s;
+		} else if (e > 307) {
+			if (e < 342) {
+				final Extended scale = _pow10(e - 308);
+				result = (divide
+					? Extended.of(s).divide(scale).doubleValue() / 1.0e+308
+					: Extended.of(s).multiply(scale).doubleValue() * 1.0e+308);
+			} else {
+				result = (divide ? 0.0 : Double.POSITIVE_INFINITY);
+			}
+		} else {
+			final Extended scale = _pow10(e);
+			result = (divide ? Extended.of(s).divide(scale) : Extended.of(s).multiply(scale)).doubleValue();
+		}
+
+		return (negative ? -result : result);
+	}
+
+	/**
+	 * sqlite3Pow10(): 10^e by squaring, rounded at every step
+	 */
+	private static Extended _pow10(int e)
+	{
+		Extended result = Extended.of(1.0);
+		Extended power = Extended.of(10.0);
+		while (true) {
+			if ((e & 1) != 0) {
+				result = result.multiply(power);
+			}
+			e >>= 1;
+			if (e == 0) {
+				return result;
+			}
+			power = power.multiply(power);
+		}
+	}
+
+	/**
+	 * sqlite3Isspace(): ASCII space, \t, \n, \v, \f and \r only
+	 */
+	private static int _skipSpaces(String value, int i)
+	{
+		while (i < value.length() && (value.charAt(i) == ' ' || (value.charAt(i) >= '\t' && value.charAt(i) <= '\r'))) {
+			i++;
+		}
+
+		return i;
+	}
+
+	private static boolean _isDigit(char c)
+	{
+		return (c >= '0' && c <= '9');
+	}
+
+	/**
+	 * sqlite3's et_getdigit(): integer part as the digit, then (value - digit) * 10
+	 */
+	private static class DigitSource
+	{
+		private Extended _value;
+		private int _left = MAX_DIGITS;
+
+		DigitSource(Extended value)
+		{
+			_value = value;
+		}
+
+		char next()
+		{
+			if (_left <= 0) {
+				return '0';
+			}
+			_left--;
+
+			final int digit = _value.intValue();
+			_value = _value.subtract(Extended.of(digit)).multiply(Extended.of(10.0));
+
+			return (char) ('0' + digit);
+		}
+	}
+
+	/**
+	 * Non negative x87 long double: mantissa * 2^exponent, every result rounded to 64 bits, half to even
+	 */
+	private static class Extended
+	{
+		private static final int BITS = 64;
+
+		final BigInteger mantissa;
+		final int exponent;
+
+		private Extended(BigInteger mantissa, int exponent)
+		{
+			this.mantissa = mantissa;
+			this.exponent = exponent;
+		}
+
+		static Extended of(double value)
+		{
+			final long bits = Double.doubleToLongBits(value);
+			final int biased = (int) ((bits >>> 52) & 0x7ff);
+			final long fraction = bits & 0xfffffffffffffL;
+			if (biased == 0) {
+				return new Extended(BigInteger.valueOf(fraction), -1074);
+			}
+
+			return new Extended(BigInteger.valueOf(fraction | (1L << 52)), biased - 1075);
+		}
+
+		/**
+		 * @param value non negative, up to 64 bits so exact
+		 */
+		static Extended of(long value)
+		{
+			return new Extended(BigInteger.valueOf(value), 0);
+		}
+
+		int signum()
+		{
+			return mantissa.signum();
+		}
+
+		Extended add(Extended other)
+		{
+			final int exponent = Math.min(this.exponent, other.exponent);
+
+			return _round(_align(exponent).add(other._align(exponent)), exponent);
+		}
+
+		/**
+		 * @param other not greater than this
+		 */
+		Extended subtract(Extended other)
+		{
+			final int exponent = Math.min(this.exponent, other.exponent);
+
+			return _round(_align(exponent).subtract(other._align(exponent)), exponent);
+		}
+
+		Extended multiply(Extended other)
+		{
+			return _round(mantissa.multiply(other.mantissa), exponent + other.exponent);
+		}
+
+		Extended divide(Extended other)
+		{
+			final int shift = Math.max(0, BITS + 2 + other.mantissa.bitLength() - mantissa.bitLength());
+			final BigInteger[] qr = mantissa.shiftLeft(shift).divideAndRemainder(other.mantissa);
+			// the remainder only matters as a sticky bit below the rounding position
+			final BigInteger quotient = qr[0].shiftLeft(1).add(qr[1].signum() != 0 ? BigInteger.ONE : BigInteger.ZERO);
+
+			return _round(quotient, exponent - other.exponent - shift - 1);
+		}
+
+		int compareTo(Extended other)
+		{
+			final int exponent = Math.min(this.exponent, other.exponent);
+
+			return _align(exponent).compareTo(other._align(exponent));
+		}
+
+		/**
+		 * Rounded half to even to the nearest double, subnormals included
+		 */
+		double doubleValue()
+		{
+			if (mantissa.signum() == 0) {
+				return 0.0;
+			}
+
+			final int quantum = Math.max(exponent + mantissa.bitLength() - 1 - 52, -1074);
+			final int shift = quantum - exponent;
+			final BigInteger result;
+			if (shift <= 0) {
+				result = mantissa.shiftLeft(-shift);
+			} else {
+				final BigInteger truncated = mantissa.shiftRight(shift);
+				final boolean half = mantissa.testBit(shift - 1);
+				final boolean below = (mantissa.getLowestSetBit() < shift - 1);
+				result = (half && (below || truncated.testBit(0)) ? truncated.add(BigInteger.ONE) : truncated);
+			}
+
+			// at most 53 bits, so the scaling is exact or overflows to infinity
+			return Math.scalb((double) result.longValue(), quantum);
+		}
+
+		/**
+		 * Truncated toward zero, only used for single digits
+		 */
+		int intValue()
+		{
+			return (exponent >= 0 ? mantissa.shiftLeft(exponent) : mantissa.shiftRight(-exponent)).intValue();
+		}
+
+		private BigInteger _align(int exponent)
+		{
+			return mantissa.shiftLeft(this.exponent - exponent);
+		}
+
+		private static Extended _round(BigInteger mantissa, int exponent)
+		{
+			final int extra = mantissa.bitLength() - BITS;
+			if (extra <= 0) {
+				return new Extended(mantissa, exponent);
+			}
+
+			BigInteger result = mantissa.shiftRight(extra);
+			final boolean half = mantissa.testBit(extra - 1);
+			final boolean below = (mantissa.getLowestSetBit() < extra - 1);
+			if (half && (below || result.testBit(0))) {
+				result = result.add(BigInteger.ONE);
+			}
+
+			return new Extended(result, exponent + extra);
+		}
+	}
+}
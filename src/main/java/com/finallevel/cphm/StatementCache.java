@@ -0,0 +1,143 @@
+package com.finallevel.cphm;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU of compiled statements for one database connection, keyed by SQL text
+ * (which already encodes table, operation, column set and conflict algorithm).
+ *
+ * A statement is checked out of the cache while it is executed, so no lock is held
+ * while SQLite works and two threads never bind the same statement.
+ */
+class StatementCache
+{
+	private final int _maxSize;
+	private final Map<String, SQLiteStatement> _statements;
+
+	private SQLiteDatabase _db;
+	private long _hitCount;
+	private long _missCount;
+
+	StatementCache(int maxSize)
+	{
+		_maxSize = maxSize;
+		_statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, false)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest)
+			{
+				if (size() > _maxSize) {
+					eldest.getValue().close();
+					return true;
+				}
+
+				return false;
+			}
+		};
+	}
+
+	long executeInsert(SQLiteDatabase db, String sql, Object[] bindArgs)
+	{
+		final SQLiteStatement statement = _acquire(db, sql);
+		try {
+			bind(statement, bindArgs);
+
+			return statement.executeInsert();
+		} finally {
+			_release(db, sql, statement);
+		}
+	}
+
+	/**
+	 * Requires API 11 (SQLiteStatement.executeUpdateDelete)
+	 */
+	int executeUpdateDelete(SQLiteDatabase db, String sql, Object[] bindArgs)
+	{
+		final SQLiteStatement statement = _acquire(db, sql);
+		try {
+			bind(statement, bindArgs);
+
+			return statement.executeUpdateDelete();
+		} finally {
+			_release(db, sql, statement);
+		}
+	}
+
+	synchronized long getHitCount()
+	{
+		return _hitCount;
+	}
+
+	synchronized long getMissCount()
+	{
+		return _missCount;
+	}
+
+	synchronized void clear()
+	{
+		for (SQLiteStatement statement : _statements.values()) {
+			statement.close();
+		}
+		_statements.clear();
+	}
+
+	private SQLiteStatement _acquire(SQLiteDatabase db, String sql)
+	{
+		synchronized (this) {
+			if (db != _db) {
+				clear();
+				_db = db;
+			}
+
+			final SQLiteStatement statement = _statements.remove(sql);
+			if (statement != null) {
+				_hitCount++;
+				return statement;
+			}
+			_missCount++;
+		}
+
+		return db.compileStatement(sql);
+	}
+
+	private synchronized void _release(SQLiteDatabase db, String sql, SQLiteStatement statement)
+	{
+		statement.clearBindings();
+
+		if (db != _db || _statements.containsKey(sql)) {
+			statement.close();
+		} else {
+			_statements.put(sql, statement);
+		}
+	}
+
+	static void bind(SQLiteStatement statement, Object[] bindArgs)
+	{
+		for (int i = 0; i < bindArgs.length; i++) {
+			bind(statement, i + 1, bindArgs[i]);
+		}
+	}
+
+	static void bind(SQLiteStatement statement, int index, Object value)
+	{
+		if (value == null) {
+			statement.bindNull(index);
+		} else if (value instanceof String) {
+			statement.bindString(index, (String) value);
+		} else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			statement.bindLong(index, ((Number) value).longValue());
+		} else if (value instanceof Double || value instanceof Float) {
+			statement.bindDouble(index, ((Number) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			statement.bindLong(index, (Boolean) value ? 1 : 0);
+		} else if (value instanceof byte[]) {
+			statement.bindBlob(index, (byte[]) value);
+		} else {
+			statement.bindString(index, value.toString());
+		}
+	}
+}
@@ -0,0 +1,553 @@
+package com.finallevel.cphm;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects models from any number of threads and writes them on one background thread,
+ * with one applyBatch() (one provider transaction) per authority and batch.
+ * A batch is written when it reaches maxBatchSize rows, when its oldest model waited
+ * maxDelayMillis, or on flush(). Models with _id > 0 are upserted, others are inserted.
+ *
+ * put() and offer() take a copy of the model's values, so the model may be changed or reused
+ * right after they return; later changes need another put(). The writer never touches queued
+ * models: the _id of the written row is passed to the callback, on the writer thread.
+ *
+ * put() blocks while the queue is full, so fast producers are slowed down to the write rate.
+ */
+public class WriteBehindWriter
+{
+	private static final String LOG_TAG = "WriteBehindWriter";
+
+	public interface FailureListener
+	{
+		/**
+		 * Called on the writer thread with the models of a batch that was rolled back
+		 */
+		void onBatchFailed(List<Object> models, Exception e);
+	}
+
+	private final BaseStructure _structure;
+	private final ContentResolver _contentResolver;
+	private final int _capacity;
+	private final int _maxBatchSize;
+	private final long _maxDelayNanos;
+	private final FailureListener _failureListener;
+
+	private final ReentrantLock _lock = new ReentrantLock();
+	private final Condition _notEmpty = _lock.newCondition();
+	private final Condition _notFull = _lock.newCondition();
+	private final Condition _processed = _lock.newCondition();
+	private final ArrayDeque<Entry> _queue;
+	private final Thread _thread;
+
+	private boolean _closed;
+	private boolean _flushRequested;
+	private long _enqueuedSeq;
+	private long _processedSeq;
+
+	// metrics, guarded by _lock
+	private long _batchCount;
+	private long _writtenCount;
+	private long _failedCount;
+	private long _blockedCount;
+	private int _maxBatch;
+	private long _totalLatencyNanos;
+	private long _maxLatencyNanos;
+
+	/**
+	 * @param capacity maximum number of queued models
+	 * @param maxBatchSize maximum number of models written in one transaction
+	 * @param maxDelayMillis maximum time a model waits for its batch
+	 * @param failureListener null to only log failed batches
+	 */
+	public WriteBehindWriter(
+		BaseStructure structure,
+		ContentResolver contentResolver,
+		int capacity,
+		int maxBatchSize,
+		long maxDelayMillis,
+		FailureListener failureListener
+	)
+	{
+		if (capacity <= 0 || maxBatchSize <= 0 || maxDelayMillis < 0) {
+			throw new IllegalArgumentException("Invalid writer limits");
+		}
+
+		_structure = structure;
+		_contentResolver = contentResolver;
+		_capacity = capacity;
+		_maxBatchSize = maxBatchSize;
+		_maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		_failureListener = failureListener;
+		_queue = new ArrayDeque<>(Math.min(capacity, 1024));
+
+		_thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				_run();
+			}
+		}, "cphm-writer");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * Queues the model, waiting while the queue is full
+	 *
+	 * @param uri table uri
+	 */
+	public <T extends BaseColumns> void put(Uri uri, T model) throws InterruptedException
+	{
+		put(uri, model, null);
+	}
+
+	/**
+	 * @param callback null, or receives the _id of the written row after commit, or the failure
+	 */
+	public <T extends BaseColumns> void put(Uri uri, T model, BaseStructure.Callback<? super Long> callback)
+		throws InterruptedException
+	{
+		final Entry entry = _createEntry(uri, model, callback);
+
+		_lock.lockInterruptibly();
+		try {
+			if (_queue.size() >= _capacity) {
+				_blockedCount++;
+				while (_queue.size() >= _capacity && !_closed) {
+					_notFull.await();
+				}
+			}
+			_enqueue(entry);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Queues the model, waiting at most timeout while the queue is full
+	 *
+	 * @return false when the queue stayed full
+	 */
+	public <T extends BaseColumns> boolean offer(Uri uri, T model, long timeout, TimeUnit unit) throws InterruptedException
+	{
+		return offer(uri, model, timeout, unit, null);
+	}
+
+	/**
+	 * @param callback null, or receives the _id of the written row after commit, or the failure
+	 */
+	public <T extends BaseColumns> boolean offer(
+		Uri uri,
+		T model,
+		long timeout,
+		TimeUnit unit,
+		BaseStructure.Callback<? super Long> callback
+	) throws InterruptedException
+	{
+		final Entry entry = _createEntry(uri, model, callback);
+
+		_lock.lockInterruptibly();
+		try {
+			if (_queue.size() >= _capacity) {
+				_blockedCount++;
+				long nanos = unit.toNanos(timeout);
+				while (_queue.size() >= _capacity && !_closed) {
+					if (nanos <= 0) {
+						return false;
+					}
+					nanos = _notFull.awaitNanos(nanos);
+				}
+			}
+			_enqueue(entry);
+
+			return true;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes queued models now instead of waiting for a full batch or maxDelayMillis
+	 */
+	public void flush()
+	{
+		_lock.lock();
+		try {
+			_flushRequested = true;
+			_notEmpty.signal();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Flushes and waits until every model queued before this call has been written or has failed
+	 * (see FailureListener and getFailedCount())
+	 *
+	 * @return false on timeout
+	 */
+	public boolean awaitDurable(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		_lock.lockInterruptibly();
+		try {
+			final long target = _enqueuedSeq;
+			_flushRequested = true;
+			_notEmpty.signal();
+
+			long nanos = unit.toNanos(timeout);
+			while (_processedSeq < target) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = _processed.awaitNanos(nanos);
+			}
+
+			return true;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops accepting models; already queued models are still written
+	 */
+	public void close()
+	{
+		_lock.lock();
+		try {
+			_closed = true;
+			_notEmpty.signal();
+			_notFull.signalAll();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public int getQueueSize()
+	{
+		_lock.lock();
+		try {
+			return _queue.size();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public long getBatchCount()
+	{
+		_lock.lock();
+		try {
+			return _batchCount;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public long getWrittenCount()
+	{
+		_lock.lock();
+		try {
+			return _writtenCount;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public long getFailedCount()
+	{
+		_lock.lock();
+		try {
+			return _failedCount;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Number of put() / offer() calls that found the queue full
+	 */
+	public long getBlockedCount()
+	{
+		_lock.lock();
+		try {
+			return _blockedCount;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public float getAverageBatchSize()
+	{
+		_lock.lock();
+		try {
+			return (_batchCount > 0 ? (float) (_writtenCount + _failedCount) / _batchCount : 0f);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public int getMaxBatchSize()
+	{
+		_lock.lock();
+		try {
+			return _maxBatch;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Average time from put() to the end of the batch transaction
+	 */
+	public long getAverageLatencyMillis()
+	{
+		_lock.lock();
+		try {
+			final long count = _writtenCount + _failedCount;
+
+			return (count > 0 ? TimeUnit.NANOSECONDS.toMillis(_totalLatencyNanos / count) : 0);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public long getMaxLatencyMillis()
+	{
+		_lock.lock();
+		try {
+			return TimeUnit.NANOSECONDS.toMillis(_maxLatencyNanos);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		_lock.lock();
+		try {
+			return "WriteBehindWriter[queue=" + _queue.size() + "/" + _capacity
+				+ ", batches=" + _batchCount + ", written=" + _writtenCount + ", failed=" + _failedCount
+				+ ", blocked=" + _blockedCount + ", maxBatch=" + _maxBatch
+				+ ", maxLatencyMs=" + TimeUnit.NANOSECONDS.toMillis(_maxLatencyNanos) + "]";
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Snapshot of the model values, taken on the calling thread
+	 */
+	private Entry _createEntry(Uri uri, Object model, BaseStructure.Callback<? super Long> callback)
+	{
+		final Contract contract = _structure.getContract(model.getClass());
+		try {
+			final ContentValues cv = contract.toContentValues(model, null, null);
+			if (contract.getModelId(model) > 0) {
+				return new Entry(BaseStructure.getUpsertUri(uri, null, null), model, cv, callback);
+			}
+			cv.remove(BaseColumns.CN_ID);
+
+			return new Entry(uri, model, cv, callback);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private void _enqueue(Entry entry)
+	{
+		if (_closed) {
+			throw new IllegalStateException("Writer is closed");
+		}
+
+		entry.enqueuedNanos = System.nanoTime();
+		entry.seq = ++_enqueuedSeq;
+		_queue.addLast(entry);
+		_notEmpty.signal();
+	}
+
+	private void _run()
+	{
+		final List<Entry> batch = new ArrayList<>(_maxBatchSize);
+		while (true) {
+			_lock.lock();
+			try {
+				while (_queue.isEmpty() && !_closed) {
+					_notEmpty.awaitUninterruptibly();
+				}
+				if (_queue.isEmpty()) {
+					return; // closed and drained
+				}
+
+				final long deadline = _queue.peekFirst().enqueuedNanos + _maxDelayNanos;
+				long nanos;
+				while (
+					_queue.size() < _maxBatchSize
+						&& !_flushRequested
+						&& !_closed
+						&& (nanos = deadline - System.nanoTime()) > 0
+					) {
+					try {
+						_notEmpty.awaitNanos(nanos);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+
+				while (batch.size() < _maxBatchSize && !_queue.isEmpty()) {
+					batch.add(_queue.pollFirst());
+				}
+				if (_queue.isEmpty()) {
+					_flushRequested = false;
+				}
+				_notFull.signalAll();
+			} finally {
+				_lock.unlock();
+			}
+
+			final boolean success = _write(batch);
+
+			final long now = System.nanoTime();
+			_lock.lock();
+			try {
+				_batchCount++;
+				if (success) {
+					_writtenCount += batch.size();
+				} else {
+					_failedCount += batch.size();
+				}
+				_maxBatch = Math.max(_maxBatch, batch.size());
+				for (Entry entry : batch) {
+					final long latency = now - entry.enqueuedNanos;
+					_totalLatencyNanos += latency;
+					_maxLatencyNanos = Math.max(_maxLatencyNanos, latency);
+				}
+				_processedSeq = batch.get(batch.size() - 1).seq;
+				_processed.signalAll();
+			} finally {
+				_lock.unlock();
+			}
+
+			batch.clear();
+		}
+	}
+
+	/**
+	 * @return false when a transaction was rolled back
+	 */
+	private boolean _write(List<Entry> batch)
+	{
+		final Map<String, List<Entry>> byAuthority = new LinkedHashMap<>();
+		for (Entry entry : batch) {
+			final String authority = entry.uri.getAuthority();
+			List<Entry> entries = byAuthority.get(authority);
+			if (entries == null) {
+				entries = new ArrayList<>(batch.size());
+				byAuthority.put(authority, entries);
+			}
+			entries.add(entry);
+		}
+
+		boolean success = true;
+		for (Map.Entry<String, List<Entry>> group : byAuthority.entrySet()) {
+			final List<Entry> entries = group.getValue();
+			final ContentProviderResult[] results;
+			try {
+				results = _apply(group.getKey(), entries);
+			} catch (Exception e) {
+				success = false;
+
+				Log.w(LOG_TAG, "Batch of " + entries.size() + " failed", e);
+				_onFailed(entries, e);
+				continue;
+			}
+
+			// committed: user code below must neither fail the group nor stop the writer thread
+			for (int i = 0; i < entries.size(); i++) {
+				final BaseStructure.Callback<? super Long> callback = entries.get(i).callback;
+				if (callback == null) {
+					continue;
+				}
+
+				final long id = (i < results.length && results[i].uri != null ? ContentUris.parseId(results[i].uri) : -1L);
+				try {
+					callback.onResult(id);
+				} catch (RuntimeException e) {
+					Log.w(LOG_TAG, "Callback failed", e);
+				}
+			}
+		}
+
+		return success;
+	}
+
+	private void _onFailed(List<Entry> entries, Exception e)
+	{
+		if (_failureListener != null) {
+			final List<Object> models = new ArrayList<>(entries.size());
+			for (Entry entry : entries) {
+				models.add(entry.model);
+			}
+			try {
+				_failureListener.onBatchFailed(models, e);
+			} catch (RuntimeException listenerException) {
+				Log.w(LOG_TAG, "Failure listener failed", listenerException);
+			}
+		}
+
+		for (Entry entry : entries) {
+			if (entry.callback != null) {
+				try {
+					entry.callback.onError(e);
+				} catch (RuntimeException callbackException) {
+					Log.w(LOG_TAG, "Callback failed", callbackException);
+				}
+			}
+		}
+	}
+
+	private ContentProviderResult[] _apply(String authority, List<Entry> entries) throws Exception
+	{
+		final ArrayList<ContentProviderOperation> operations = new ArrayList<>(entries.size());
+		for (Entry entry : entries) {
+			operations.add(ContentProviderOperation.newInsert(entry.uri).withValues(entry.values).build());
+		}
+
+		return _contentResolver.applyBatch(authority, operations);
+	}
+
+	private static class Entry
+	{
+		final Uri uri;
+		final Object model;
+		final ContentValues values;
+		final BaseStructure.Callback<? super Long> callback;
+		long seq;
+		long enqueuedNanos;
+
+		Entry(Uri uri, Object model, ContentValues values, BaseStructure.Callback<? super Long> callback)
+		{
+			this.uri = uri;
+			this.model = model;
+			this.values = values;
+			this.callback = callback;
+		}
+	}
+}
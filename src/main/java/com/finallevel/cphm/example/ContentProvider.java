@@ -6,6 +6,8 @@ import android.database.sqlite.SQLiteOpenHelper;
 import com.finallevel.cphm.BaseProvider;
 import com.finallevel.cphm.BaseSQLiteOpenHelper;
 import com.finallevel.cphm.BaseStructure;
+import com.finallevel.cphm.DatabaseProfile;
+import com.finallevel.cphm.ProviderMetrics;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -15,6 +17,8 @@ public class ContentProvider extends BaseProvider
 	public static final String DATABASE_FILE = "example.db";
 	public static final int VERSION = 5;
 
+	public static final ProviderMetrics METRICS = new ProviderMetrics(50, 20); // calls of 50 ms and more, last 20 kept
+
 	@Override
 	public BaseStructure getStructure()
 	{
@@ -27,6 +31,12 @@ public class ContentProvider extends BaseProvider
 		return new OpenHelper(getContext(), DATABASE_FILE, null, VERSION);
 	}
 
+	@Override
+	protected ProviderMetrics getMetrics()
+	{
+		return METRICS;
+	}
+
 }
 
 class OpenHelper extends BaseSQLiteOpenHelper
@@ -42,6 +52,15 @@ class OpenHelper extends BaseSQLiteOpenHelper
 		return S.instance();
 	}
 
+	@Override
+	protected DatabaseProfile getDatabaseProfile()
+	{
+		return new DatabaseProfile()
+			.setWriteAheadLogging(true)
+			.setSynchronous(DatabaseProfile.Synchronous.NORMAL)
+			.setTempStore(DatabaseProfile.TempStore.MEMORY);
+	}
+
 	@Override
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
 	{